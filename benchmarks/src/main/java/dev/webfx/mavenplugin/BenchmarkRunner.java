@@ -0,0 +1,22 @@
+package dev.webfx.mavenplugin;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Same as the JMH main class (accepts the same command line options), but with the GC profiler enabled, so the
+ * allocation rate is reported together with the throughput.
+ */
+public final class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()
+        ).run();
+    }
+
+}
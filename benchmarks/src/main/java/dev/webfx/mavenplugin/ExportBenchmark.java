@@ -0,0 +1,46 @@
+package dev.webfx.mavenplugin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the export (webfx.xml artifact generation) on synthetic WebFX workspaces of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int moduleCount;
+
+    private Path workspace;
+    private String artifactPath;
+
+    @Setup(Level.Trial)
+    public void generateWorkspace() throws IOException {
+        workspace = SyntheticWorkspaces.generateWebFxWorkspace(moduleCount);
+        artifactPath = workspace.resolve("target/webfx-artifact/webfx.xml").toString();
+        // A failing export (ex: unresolved dependencies) returns -1 quickly and would be measured as a fast export
+        if (ExportMojo.export(workspace.toString(), artifactPath) < 0 || !Files.isRegularFile(Path.of(artifactPath)))
+            throw new IllegalStateException("The export of the synthetic workspace failed: " + workspace);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkspace() throws IOException {
+        SyntheticWorkspaces.delete(workspace);
+    }
+
+    @Benchmark
+    public int export() {
+        return ExportMojo.export(workspace.toString(), artifactPath);
+    }
+
+}
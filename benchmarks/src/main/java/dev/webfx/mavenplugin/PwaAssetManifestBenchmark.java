@@ -0,0 +1,68 @@
+package dev.webfx.mavenplugin;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark of the PWA asset pipeline (files walk + hashing + gzip sizing + manifest json) on synthetic GWT output
+ * trees, together with the individual steps applied to a multi-MB permutation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PwaAssetManifestBenchmark {
+
+    private static final Log LOG = new SystemStreamLog();
+
+    @Param({"1000", "5000", "20000"})
+    public int fileCount;
+
+    @Param({"4"})
+    public int largeCacheJsCount;
+
+    @Param({"5"})
+    public int largeCacheJsMegabytes;
+
+    private Path gwtAppPath;
+    private Path largeCacheJsPath;
+
+    @Setup(Level.Trial)
+    public void generateGwtOutput() throws IOException {
+        gwtAppPath = SyntheticWorkspaces.generateGwtOutput(fileCount, largeCacheJsCount, largeCacheJsMegabytes);
+        try (Stream<Path> stream = Files.walk(gwtAppPath)) {
+            largeCacheJsPath = stream.filter(p -> p.toString().endsWith(".cache.js")).findFirst().orElseThrow();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteGwtOutput() throws IOException {
+        SyntheticWorkspaces.delete(gwtAppPath);
+    }
+
+    @Benchmark
+    public String assetManifest() throws IOException {
+        return PwaMojo.buildAssetManifestJson(gwtAppPath, Map.of("/app.css", "CRITICAL"), LOG);
+    }
+
+    @Benchmark
+    public String sha256LargeCacheJs() throws Exception {
+        return PwaMojo.sha256Hex(largeCacheJsPath);
+    }
+
+    @Benchmark
+    public long gzipSizeLargeCacheJs() {
+        return PwaMojo.gzipSize(largeCacheJsPath);
+    }
+
+}
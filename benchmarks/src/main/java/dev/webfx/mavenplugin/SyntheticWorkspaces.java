@@ -0,0 +1,185 @@
+package dev.webfx.mavenplugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generators of synthetic inputs for the benchmarks: WebFX workspaces (for the export) and GWT output trees (for the
+ * PWA asset manifest). The generation is seeded, so the same parameters always produce the same files.
+ */
+final class SyntheticWorkspaces {
+
+    private static final String[] USED_PACKAGES = { "java.time", "java.text", "java.util.regex", "java.lang.ref" };
+    private static final String[] USED_CLASSES = { "java.util.Properties", "java.io.EOFException", "java.util.ServiceLoader" };
+
+    /**
+     * Generates a WebFX workspace with a root module aggregating moduleCount children modules. Each child has a few
+     * java sources using some JDK packages and classes, and webfx.xml directives depending on them.
+     */
+    static Path generateWebFxWorkspace(int moduleCount) throws IOException {
+        Path root = Files.createTempDirectory("webfx-bench-workspace-");
+        StringBuilder modules = new StringBuilder();
+        for (int i = 0; i < moduleCount; i++) {
+            String moduleName = moduleName(i);
+            modules.append("        <module>").append(moduleName).append("</module>\n");
+            generateChildModule(root.resolve(moduleName), moduleName, i);
+        }
+        write(root.resolve("pom.xml"), pom("webfx-bench", "pom", null, "    <modules>\n" + modules + "    </modules>\n"));
+        write(root.resolve("webfx.xml"), """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project>
+                <update-options>
+                    <generate-export-snapshot/>
+                </update-options>
+            </project>
+            """);
+        return root;
+    }
+
+    private static void generateChildModule(Path moduleDirectory, String moduleName, int index) throws IOException {
+        write(moduleDirectory.resolve("pom.xml"), pom(moduleName, "jar", "webfx-bench", ""));
+        String usedPackage = USED_PACKAGES[index % USED_PACKAGES.length];
+        String usedClass = USED_CLASSES[index % USED_CLASSES.length];
+        // Each child depends on the previous one, both directly and through directives (staying within the workspace,
+        // so the CLI doesn't need to download anything)
+        String dependencies = index == 0 ? "" : """
+                        <module>%1$s</module>
+                        <module if-uses-java-package="%2$s">%1$s</module>
+                        <module if-uses-java-class="%3$s">%1$s</module>
+            """.formatted(moduleName(index - 1), usedPackage, usedClass);
+        write(moduleDirectory.resolve("webfx.xml"), """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project>
+                <exported-packages>
+                    <source-packages/>
+                </exported-packages>
+                <dependencies>
+                    <used-by-source-modules>
+            %s        </used-by-source-modules>
+                </dependencies>
+            </project>
+            """.formatted(dependencies));
+        String packageName = "bench.module" + index;
+        Path packageDirectory = moduleDirectory.resolve("src/main/java").resolve(packageName.replace('.', '/'));
+        for (int c = 0; c < 5; c++) {
+            write(packageDirectory.resolve("Class" + c + ".java"), """
+                package %s;
+
+                import %s.*;
+                import %s;
+
+                public final class Class%d {
+                    public static Object use() {
+                        return %s.class;
+                    }
+                }
+                """.formatted(packageName, usedPackage, usedClass, c, usedClass));
+        }
+    }
+
+    private static String moduleName(int index) {
+        return "webfx-bench-module-" + index;
+    }
+
+    private static String pom(String artifactId, String packaging, String parentArtifactId, String extra) {
+        String parent = parentArtifactId == null ? "" : """
+                <parent>
+                    <groupId>dev.webfx.bench</groupId>
+                    <artifactId>%s</artifactId>
+                    <version>1.0.0</version>
+                </parent>
+            """.formatted(parentArtifactId);
+        return """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <modelVersion>4.0.0</modelVersion>
+            %s    <groupId>dev.webfx.bench</groupId>
+                <artifactId>%s</artifactId>
+                <version>1.0.0</version>
+                <packaging>%s</packaging>
+            %s</project>
+            """.formatted(parent, artifactId, packaging, extra);
+    }
+
+    /**
+     * Generates a GWT output tree with fileCount files (small js, css, images and fonts spread over a few folders),
+     * including largeCacheJsCount permutations (.cache.js) of largeCacheJsMegabytes MB each, and an index.html
+     * referencing the entry point.
+     */
+    static Path generateGwtOutput(int fileCount, int largeCacheJsCount, int largeCacheJsMegabytes) throws IOException {
+        Path appDirectory = Files.createTempDirectory("webfx-bench-gwt-");
+        Random random = new Random(fileCount);
+        write(appDirectory.resolve("index.html"), """
+            <!DOCTYPE html>
+            <html>
+              <head>
+                <link rel="stylesheet" href="app.css">
+                <script src="app/app.nocache.js"></script>
+              </head>
+              <body></body>
+            </html>
+            """);
+        write(appDirectory.resolve("app.css"), "body { margin: 0; }\n");
+        write(appDirectory.resolve("app/app.nocache.js"), javaScript(random, 20 * 1024));
+        for (int i = 0; i < largeCacheJsCount; i++)
+            write(appDirectory.resolve("app/" + hexName(random) + ".cache.js"), javaScript(random, largeCacheJsMegabytes * 1024 * 1024));
+        String[] extensions = { ".js", ".css", ".png", ".woff2", ".json" };
+        for (int i = 0; i < fileCount - largeCacheJsCount - 3; i++) {
+            String extension = extensions[i % extensions.length];
+            Path file = appDirectory.resolve("app/res" + (i % 50) + "/file" + i + extension);
+            int size = 256 + random.nextInt(32 * 1024);
+            if (extension.equals(".png") || extension.equals(".woff2"))
+                writeBytes(file, randomBytes(random, size)); // incompressible binary content
+            else
+                write(file, javaScript(random, size));
+        }
+        return appDirectory;
+    }
+
+    private static String hexName(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 32; i++)
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        return sb.toString();
+    }
+
+    // Generates compressible JavaScript-like text (the typical content of GWT permutations)
+    private static String javaScript(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        while (sb.length() < size)
+            sb.append("function f").append(random.nextInt(100_000)).append("(a,b){return a.").append(random.nextInt(1000))
+                .append("+b.x").append(random.nextInt(100)).append(";}\n");
+        sb.setLength(size);
+        return sb.toString();
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        writeBytes(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream os = Files.newOutputStream(file)) {
+            os.write(bytes);
+        }
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (directory != null && Files.exists(directory))
+            try (Stream<Path> stream = Files.walk(directory)) {
+                stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+    }
+}
@@ -0,0 +1,363 @@
+package dev.webfx.mavenplugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Binary delta patches of the large assets that changed since a previous build, so the returning users download only
+ * the patch and rebuild the new asset from their cached version (the service worker verifies the result with the
+ * SHA-256 of the manifest, and falls back to a full download if the base is not in its cache).
+ *
+ * The base of an asset is the asset with the same path in the previous build, or - for the GWT permutations whose
+ * names change with their content - the previous permutation compiled for the same deferred binding properties. The
+ * previous build can be given as a GWT output directory (or its parent, such as the exploded war), or as an archive
+ * (such as the previous war).
+ *
+ * Patch format: "WD1" + target length (varint) + operations, each operation being either 1 + offset + length (varints)
+ * to copy a range of the base, or 2 + length (varint) + bytes to add new bytes.
+ *
+ * The base and new assets are memory-mapped (not loaded in the heap), and the patch is written to its file as it is
+ * produced. Each patch is then applied the same way as the service worker does, and is kept only if the result matches
+ * the hash of the new asset.
+ */
+final class AssetDeltaPatches {
+
+    static final String PATCHES_DIRECTORY = "pwa-patches";
+
+    // Only the assets above that size are worth patching
+    private static final long MIN_ASSET_SIZE = 100 * 1024;
+    // A patch is kept only if smaller than that ratio of the new asset size
+    private static final double MAX_PATCH_RATIO = 0.5;
+
+    private static final int BLOCK_SIZE = 32;
+    private static final int HASH_BASE = 0x01000193;
+    private static final int COPY_OP = 1, ADD_OP = 2;
+
+    static final class Patch {
+        final String baseHash;
+        final String path;
+        final long size;
+
+        Patch(String baseHash, String path, long size) {
+            this.baseHash = baseHash;
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Generates the patches of the changed candidate assets into gwtAppPath/pwa-patches (the patches of the previous
+     * builds are removed) and returns them per asset relative path.
+     */
+    static Map<Path, Patch> generatePatches(Path gwtAppPath, Path previousBuildPath, Map<Path, PwaMojo.AssetDigest> candidates,
+                                            Map<String, Map<String, Set<String>>> permutations, Log log) {
+        Map<Path, Patch> patches = new HashMap<>();
+        Path patchesDirectory = gwtAppPath.resolve(PATCHES_DIRECTORY);
+        try (FileSystem archiveFileSystem = Files.isRegularFile(previousBuildPath) ? FileSystems.newFileSystem(previousBuildPath, (ClassLoader) null) : null) {
+            Path previousRoot = resolvePreviousGwtAppRoot(archiveFileSystem == null ? previousBuildPath : archiveFileSystem.getPath("/"), gwtAppPath);
+            if (previousRoot == null) {
+                log.warn("Previous build not found at " + previousBuildPath + " (no delta patches generated)");
+                return patches;
+            }
+            Map<String, Map<String, Set<String>>> previousPermutations = PwaMojo.readGwtPermutations(previousRoot, log);
+            Set<String> patchFileNames = new HashSet<>();
+            for (Map.Entry<Path, PwaMojo.AssetDigest> entry : candidates.entrySet()) {
+                PwaMojo.AssetDigest digest = entry.getValue();
+                if (digest.size < MIN_ASSET_SIZE)
+                    continue;
+                String relativePath = entry.getKey().toString().replace('\\', '/');
+                Path basePath = findBase(previousRoot, relativePath, permutations.get("/" + relativePath), previousPermutations);
+                if (basePath == null)
+                    continue;
+                try (BuildTracer.Span ignored = BuildTracer.span("delta patch generation", relativePath)) {
+                    String baseHash = PwaMojo.sha256Hex(basePath);
+                    if (baseHash.equals(digest.hash))
+                        continue;
+                    String patchFileName = digest.hash.substring(0, 16) + "." + baseHash.substring(0, 16) + ".patch";
+                    Path patchPath = patchesDirectory.resolve(patchFileName);
+                    // The patch name is derived from the 2 contents, so an existing patch doesn't need to be generated again
+                    if (!Files.isRegularFile(patchPath)) {
+                        Files.createDirectories(patchesDirectory);
+                        Path tempPatchPath = Files.createTempFile(patchesDirectory, patchFileName, ".tmp");
+                        try {
+                            boolean created;
+                            try (MappedFile base = MappedFile.map(basePath); MappedFile target = MappedFile.map(gwtAppPath.resolve(entry.getKey()))) {
+                                created = createPatch(base.buffer, target.buffer, tempPatchPath, (long) (digest.size * MAX_PATCH_RATIO));
+                                if (created && !verifyPatch(base.buffer, tempPatchPath, digest.hash)) {
+                                    log.warn("The delta patch of " + relativePath + " doesn't rebuild the asset (not published)");
+                                    created = false;
+                                }
+                            }
+                            if (!created)
+                                continue;
+                            Files.move(tempPatchPath, patchPath, StandardCopyOption.REPLACE_EXISTING);
+                        } finally {
+                            Files.deleteIfExists(tempPatchPath);
+                        }
+                    }
+                    patchFileNames.add(patchFileName);
+                    patches.put(entry.getKey(), new Patch(baseHash, "/" + PATCHES_DIRECTORY + "/" + patchFileName, Files.size(patchPath)));
+                } catch (IOException e) {
+                    log.warn("Failed to generate the delta patch of " + relativePath + " - " + e.getMessage());
+                }
+            }
+            removeOtherPatches(patchesDirectory, patchFileNames);
+        } catch (IOException e) {
+            log.warn("Failed to read the previous build " + previousBuildPath + " (no delta patches generated) - " + e.getMessage());
+        }
+        return patches;
+    }
+
+    private static Path resolvePreviousGwtAppRoot(Path previousPath, Path gwtAppPath) {
+        Path moduleDirectory = previousPath.resolve(gwtAppPath.getFileName().toString());
+        if (Files.isDirectory(moduleDirectory))
+            return moduleDirectory;
+        return Files.isDirectory(previousPath) ? previousPath : null;
+    }
+
+    private static Path findBase(Path previousRoot, String relativePath, Map<String, Set<String>> permutationProperties, Map<String, Map<String, Set<String>>> previousPermutations) {
+        Path samePath = previousRoot.resolve(relativePath);
+        if (Files.isRegularFile(samePath))
+            return samePath;
+        if (permutationProperties != null)
+            for (Map.Entry<String, Map<String, Set<String>>> previousPermutation : previousPermutations.entrySet())
+                if (previousPermutation.getValue().equals(permutationProperties)) {
+                    Path previousPermutationPath = previousRoot.resolve(previousPermutation.getKey().substring(1));
+                    if (Files.isRegularFile(previousPermutationPath))
+                        return previousPermutationPath;
+                }
+        return null;
+    }
+
+    private static void removeOtherPatches(Path patchesDirectory, Set<String> patchFileNames) throws IOException {
+        if (!Files.isDirectory(patchesDirectory))
+            return;
+        try (Stream<Path> stream = Files.list(patchesDirectory)) {
+            for (Path p : (Iterable<Path>) stream::iterator)
+                if (!patchFileNames.contains(p.getFileName().toString()))
+                    Files.delete(p);
+        }
+    }
+
+    // Read-only mapping of a file (an archive entry is first extracted to a temporary file, as it can't be mapped)
+    private static final class MappedFile implements AutoCloseable {
+        final ByteBuffer buffer;
+        private final Path tempPath;
+
+        private MappedFile(ByteBuffer buffer, Path tempPath) {
+            this.buffer = buffer;
+            this.tempPath = tempPath;
+        }
+
+        static MappedFile map(Path path) throws IOException {
+            Path tempPath = null;
+            if (path.getFileSystem() != FileSystems.getDefault()) {
+                tempPath = Files.createTempFile("webfx-pwa-base", ".tmp");
+                Files.copy(path, tempPath, StandardCopyOption.REPLACE_EXISTING);
+                path = tempPath;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new MappedFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), tempPath);
+            } catch (IOException e) {
+                if (tempPath != null)
+                    Files.deleteIfExists(tempPath);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (tempPath != null)
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException e) { // Ex: on Windows while still mapped (the mapping is released by the GC)
+                    tempPath.toFile().deleteOnExit();
+                }
+        }
+    }
+
+    /**
+     * Writes the patch transforming base into target to patchPath, and returns true, or returns false as soon as the
+     * patch exceeds maxPatchSize. The base is indexed by blocks, and the target is scanned with a rolling hash to find
+     * these blocks, each match being then extended as much as possible in both directions.
+     */
+    static boolean createPatch(ByteBuffer base, ByteBuffer target, Path patchPath, long maxPatchSize) throws IOException {
+        BlockIndex blockOffsets = new BlockIndex(base.limit() / BLOCK_SIZE);
+        for (int offset = 0; offset + BLOCK_SIZE <= base.limit(); offset += BLOCK_SIZE)
+            blockOffsets.putIfAbsent(blockHash(base, offset), offset);
+        int highestPower = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++)
+            highestPower *= HASH_BASE;
+        int baseLength = base.limit(), targetLength = target.limit();
+        try (DataOutputStream patch = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(patchPath)))) {
+            patch.write('W');
+            patch.write('D');
+            patch.write('1');
+            writeVarint(patch, targetLength);
+            int addStart = 0, p = 0;
+            int hash = targetLength >= BLOCK_SIZE ? blockHash(target, 0) : 0;
+            while (p + BLOCK_SIZE <= targetLength) {
+                int baseOffset = blockOffsets.get(hash);
+                if (baseOffset >= 0 && equalBlocks(base, baseOffset, target, p)) {
+                    int matchStart = p, matchBaseOffset = baseOffset;
+                    while (matchStart > addStart && matchBaseOffset > 0 && base.get(matchBaseOffset - 1) == target.get(matchStart - 1)) {
+                        matchStart--;
+                        matchBaseOffset--;
+                    }
+                    int matchEnd = p + BLOCK_SIZE, matchBaseEnd = baseOffset + BLOCK_SIZE;
+                    while (matchEnd < targetLength && matchBaseEnd < baseLength && base.get(matchBaseEnd) == target.get(matchEnd)) {
+                        matchEnd++;
+                        matchBaseEnd++;
+                    }
+                    writeAdd(patch, target, addStart, matchStart);
+                    patch.write(COPY_OP);
+                    writeVarint(patch, matchBaseOffset);
+                    writeVarint(patch, matchEnd - matchStart);
+                    if (patch.size() > maxPatchSize)
+                        return false;
+                    addStart = p = matchEnd;
+                    if (p + BLOCK_SIZE <= targetLength)
+                        hash = blockHash(target, p);
+                } else {
+                    if (p + BLOCK_SIZE < targetLength)
+                        hash = (hash - (target.get(p) & 0xFF) * highestPower) * HASH_BASE + (target.get(p + BLOCK_SIZE) & 0xFF);
+                    p++;
+                }
+            }
+            writeAdd(patch, target, addStart, targetLength);
+            return patch.size() <= maxPatchSize;
+        }
+    }
+
+    /**
+     * Applies the patch to the base in the same way as the service worker (applyDeltaPatch() in the service worker
+     * script), and returns true if the result matches the expected SHA-256. The patch is streamed and the result is
+     * digested as it is rebuilt, so neither of them is held in memory.
+     */
+    static boolean verifyPatch(ByteBuffer base, Path patchPath, String expectedHash) throws IOException {
+        MessageDigest md = ExportFingerprints.newSha256();
+        try (InputStream patch = new BufferedInputStream(Files.newInputStream(patchPath))) {
+            if (patch.read() != 'W' || patch.read() != 'D' || patch.read() != '1')
+                return false;
+            long targetLength = readVarint(patch), length = 0;
+            byte[] buffer = new byte[8192];
+            for (int op; (op = patch.read()) != -1; ) {
+                long a = readVarint(patch);
+                if (op == COPY_OP) {
+                    long copyLength = readVarint(patch);
+                    if (a + copyLength > base.limit())
+                        return false;
+                    md.update(base.duplicate().position((int) a).limit((int) (a + copyLength)));
+                    length += copyLength;
+                } else if (op == ADD_OP) {
+                    for (long remaining = a; remaining > 0; ) {
+                        int n = patch.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (n < 0)
+                            return false; // Truncated patch
+                        md.update(buffer, 0, n);
+                        remaining -= n;
+                    }
+                    length += a;
+                } else
+                    return false;
+            }
+            return length == targetLength && PwaMojo.toHex(md.digest()).equals(expectedHash);
+        } catch (EOFException e) { // Truncated patch
+            return false;
+        }
+    }
+
+    // Index of the base blocks (block hash -> offset of its first occurrence), as an open addressing hash table of
+    // primitive ints, to avoid the boxing overhead of a map for the large assets
+    private static final class BlockIndex {
+        private final int[] hashes;
+        private final int[] offsets; // offset + 1 (0 = empty slot)
+        private final int mask;
+
+        BlockIndex(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+            hashes = new int[capacity];
+            offsets = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        void putIfAbsent(int hash, int offset) {
+            int slot = mix(hash) & mask;
+            while (offsets[slot] != 0) {
+                if (hashes[slot] == hash)
+                    return;
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            offsets[slot] = offset + 1;
+        }
+
+        // Returns the offset of that block hash, or -1 if not found
+        int get(int hash) {
+            for (int slot = mix(hash) & mask; offsets[slot] != 0; slot = (slot + 1) & mask)
+                if (hashes[slot] == hash)
+                    return offsets[slot] - 1;
+            return -1;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static boolean equalBlocks(ByteBuffer base, int baseOffset, ByteBuffer target, int targetOffset) {
+        for (int i = 0; i < BLOCK_SIZE; i++)
+            if (base.get(baseOffset + i) != target.get(targetOffset + i))
+                return false;
+        return true;
+    }
+
+    private static int blockHash(ByteBuffer bytes, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++)
+            hash = hash * HASH_BASE + (bytes.get(i) & 0xFF);
+        return hash;
+    }
+
+    private static void writeAdd(OutputStream patch, ByteBuffer target, int start, int end) throws IOException {
+        if (end > start) {
+            patch.write(ADD_OP);
+            writeVarint(patch, end - start);
+            byte[] buffer = new byte[Math.min(8192, end - start)];
+            ByteBuffer source = target.duplicate().position(start).limit(end);
+            while (source.hasRemaining()) {
+                int n = Math.min(buffer.length, source.remaining());
+                source.get(buffer, 0, n);
+                patch.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        int shift = 0, b;
+        do {
+            b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,76 @@
+package dev.webfx.mavenplugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * Persistent cache of the asset digests computed by the pwa goal, stored in target/webfx-cache/ between builds. Each
+ * asset is keyed by its relative path and recorded with its size and last modified time, so only the new or modified
+ * assets are read again. The entries of the deleted assets are removed when saving (only the assets requested during
+ * this build are kept).
+ */
+final class AssetManifestCache {
+
+    private final Path cachePath;
+    private final Properties previous = new Properties();
+    private final Properties current = new Properties(); // Properties is synchronized, so it can be used in parallel
+
+    AssetManifestCache(Path cachePath, boolean fullRebuild) {
+        this.cachePath = cachePath;
+        if (!fullRebuild && Files.isRegularFile(cachePath))
+            try (InputStream is = Files.newInputStream(cachePath)) {
+                previous.load(is);
+            } catch (IOException e) {
+                previous.clear();
+            }
+    }
+
+    /**
+     * Returns the digest of that asset, from the cache if the asset didn't change since it was recorded (and if it
+     * includes the gzip size when required), or by reading the asset otherwise.
+     */
+    PwaMojo.AssetDigest getOrComputeDigest(String assetPath, Path file, boolean withGzipSize) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        // Note: the stamp is read before the digest, so an asset modified during the digest is read again next time
+        String stamp = attributes.size() + "|" + attributes.lastModifiedTime().toMillis() + "|";
+        String value = previous.getProperty(assetPath);
+        PwaMojo.AssetDigest digest = value == null || !value.startsWith(stamp) ? null : parseDigest(value.substring(stamp.length()), attributes.size());
+        if (digest == null || withGzipSize && digest.gzipSize < 0) {
+            try (BuildTracer.Span ignored = BuildTracer.span("asset digesting", assetPath)) {
+                digest = PwaMojo.digestAsset(file, withGzipSize);
+            }
+            value = stamp + digest.hash + "|" + digest.gzipSize;
+        }
+        current.setProperty(assetPath, value);
+        return digest;
+    }
+
+    private static PwaMojo.AssetDigest parseDigest(String hashAndGzipSize, long size) {
+        int separatorIndex = hashAndGzipSize.indexOf('|');
+        if (separatorIndex < 0)
+            return null;
+        try {
+            return new PwaMojo.AssetDigest(hashAndGzipSize.substring(0, separatorIndex), size, Long.parseLong(hashAndGzipSize.substring(separatorIndex + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    void save(Log log) {
+        try {
+            Files.createDirectories(cachePath.getParent());
+            try (OutputStream os = Files.newOutputStream(cachePath)) {
+                current.store(os, "WebFX PWA asset manifest cache (generated file)");
+            }
+        } catch (IOException e) { // Not blocking, as it's just a cache
+            log.warn("Couldn't write " + cachePath + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.webfx.mavenplugin;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Options of PwaMojo.buildAssetManifestJson(). The default values reproduce the original asset manifest (no cache, no
+ * precompressed variants, no delta patches, no budgets report, no prefetch and no runtime caching settings).
+ */
+final class AssetManifestOptions {
+
+    /**
+     * Persistent cache of the asset digests (null = no cache)
+     */
+    AssetManifestCache cache;
+
+    /**
+     * Whether to write the precompressed .gz siblings of the compressible assets
+     */
+    boolean precompress;
+
+    /**
+     * GWT output directory or archive of the previous build, used as base for the delta patches (null = no patches)
+     */
+    Path previousBuildPath;
+
+    /**
+     * Performance budgets where the precached assets are recorded (null = no budgets report)
+     */
+    PwaBudgets budgets;
+
+    /**
+     * Prefetch settings of the service worker written in the manifest (0 = not written, the service worker defaults
+     * are then used)
+     */
+    int prefetchConcurrency;
+    int prefetchSlowConcurrency;
+    boolean prefetchBackgroundOnSaveData;
+
+    /**
+     * Runtime caching rules of the service worker (path regex -> strategy) and quota of its runtime cache (no rules =
+     * not written)
+     */
+    Map<String, String> runtimeCachingRules = Map.of();
+    long runtimeCacheMaxBytes;
+
+}
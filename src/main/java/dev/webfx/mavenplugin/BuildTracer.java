@@ -0,0 +1,165 @@
+package dev.webfx.mavenplugin;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Opt-in instrumentation of the goals, activated with -Dwebfx.trace=target/webfx-trace.json. The recorded spans are
+ * written in the Chrome trace-event format (which can be loaded in chrome://tracing or https://ui.perfetto.dev), and a
+ * per-phase summary is printed at the end of each goal. The trace file accumulates the spans of all the goals executed
+ * in the same Maven session: the spans recorded by a goal are appended to it at the end of that goal and then released,
+ * and the file is started again by the first goal of the next session (so a long-lived JVM such as the Maven daemon
+ * doesn't keep the spans of the previous builds).
+ */
+final class BuildTracer {
+
+    static final String TRACE_PROPERTY = "webfx.trace";
+
+    // Closing of the trace file, overwritten by the spans appended by the next goals of the same session
+    private static final String TRACE_END = "\n]}\n";
+
+    private static final List<TraceEvent> EVENTS = new ArrayList<>();
+    // Trace file currently written, with the session it belongs to and the origin of its timestamps
+    private static WeakReference<MavenSession> traceSession = new WeakReference<>(null);
+    private static Path tracePath;
+    private static long traceStartNanos;
+    private static boolean traceHasEvents;
+
+    private static final Span NO_OP_SPAN = () -> { };
+
+    interface Span extends AutoCloseable {
+        @Override
+        void close(); // no exception
+    }
+
+    private static final class TraceEvent {
+        final String phase;
+        final String name;
+        final long tid;
+        final long startNanos;
+        long durationNanos;
+
+        TraceEvent(String phase, String name, long tid, long startNanos) {
+            this.phase = phase;
+            this.name = name;
+            this.tid = tid;
+            this.startNanos = startNanos;
+        }
+    }
+
+    static boolean isEnabled() {
+        String traceFile = System.getProperty(TRACE_PROPERTY);
+        return traceFile != null && !traceFile.isBlank();
+    }
+
+    /**
+     * Starts a span that ends when closed (to use in a try-with-resources statement). The phase is used to group the
+     * spans in the summary, while the name identifies that span in the trace (ex: phase = "export child", name = the
+     * child module name).
+     */
+    static Span span(String phase, String name) {
+        if (!isEnabled())
+            return NO_OP_SPAN;
+        TraceEvent event = new TraceEvent(phase, name, Thread.currentThread().getId(), System.nanoTime());
+        return () -> {
+            event.durationNanos = System.nanoTime() - event.startNanos;
+            synchronized (EVENTS) {
+                EVENTS.add(event);
+            }
+        };
+    }
+
+    static Span span(String phase) {
+        return span(phase, phase);
+    }
+
+    /**
+     * Appends the spans recorded since the previous call to the trace file (which is started again if that session is
+     * not the one of the previous call, or if null), releases them, and logs their summary. To be called at the end of
+     * each goal.
+     */
+    static synchronized void writeTraceAndLogSummary(String goal, MavenSession session, Log log) {
+        if (!isEnabled())
+            return;
+        List<TraceEvent> events;
+        synchronized (EVENTS) {
+            events = new ArrayList<>(EVENTS);
+            EVENTS.clear();
+        }
+        Path path = Path.of(System.getProperty(TRACE_PROPERTY)).toAbsolutePath();
+        if (session == null || session != traceSession.get() || !path.equals(tracePath)) {
+            traceSession = new WeakReference<>(session);
+            tracePath = path;
+            traceStartNanos = events.stream().mapToLong(event -> event.startNanos).min().orElse(System.nanoTime());
+            traceHasEvents = false;
+        }
+        try {
+            appendTrace(events);
+        } catch (IOException e) {
+            log.warn("Couldn't write the WebFX trace file " + tracePath + ": " + e.getMessage());
+        }
+        logSummary(goal, events, tracePath, log);
+    }
+
+    private static void appendTrace(List<TraceEvent> events) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (!traceHasEvents) {
+            if (tracePath.getParent() != null)
+                Files.createDirectories(tracePath.getParent());
+            Files.deleteIfExists(tracePath);
+            sb.append("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+        }
+        for (TraceEvent event : events) {
+            sb.append(traceHasEvents ? ",\n  " : "\n  ");
+            traceHasEvents = true;
+            sb.append("{\"name\": \"").append(escapeJson(event.name)).append("\", \"cat\": \"").append(escapeJson(event.phase))
+                .append("\", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(event.tid)
+                .append(", \"ts\": ").append((event.startNanos - traceStartNanos) / 1000)
+                .append(", \"dur\": ").append(event.durationNanos / 1000).append("}");
+        }
+        sb.append(TRACE_END);
+        try (RandomAccessFile file = new RandomAccessFile(tracePath.toFile(), "rw")) {
+            // Overwriting the closing of the spans written by the previous goals
+            file.seek(Math.max(0, file.length() - TRACE_END.length()));
+            file.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            file.setLength(file.getFilePointer());
+        }
+    }
+
+    private static void logSummary(String goal, List<TraceEvent> events, Path tracePath, Log log) {
+        // Phase -> { count, total nanos, max nanos } in order of first appearance
+        Map<String, long[]> phaseStats = new LinkedHashMap<>();
+        for (TraceEvent event : events) {
+            long[] stats = phaseStats.computeIfAbsent(event.phase, k -> new long[3]);
+            stats[0]++;
+            stats[1] += event.durationNanos;
+            stats[2] = Math.max(stats[2], event.durationNanos);
+        }
+        log.info("WebFX " + goal + " trace summary (full trace in " + tracePath + "):");
+        log.info(String.format("  %-32s %8s %12s %12s", "phase", "count", "total ms", "max ms"));
+        phaseStats.forEach((phase, stats) ->
+            log.info(String.format("  %-32s %8d %12.1f %12.1f", phase, stats[0], stats[1] / 1e6, stats[2] / 1e6)));
+    }
+
+    private static String escapeJson(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+}
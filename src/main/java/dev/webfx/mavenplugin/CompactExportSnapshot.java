@@ -0,0 +1,98 @@
+package dev.webfx.mavenplugin;
+
+import org.dom4j.Element;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compact version of the export snapshot, published next to the webfx.xml artifact, so that importers can load only
+ * the module sections they need instead of parsing the whole pretty-printed XML. It's a zip file (so the zip central
+ * directory acts as the offset index keyed by module name) containing:
+ * - index.tsv: the exported modules in depth-first order (module name + entry name)
+ * - modules/{module name}.xml: the compressed <project/> element of each module
+ * - usages.tsv: the precomputed usages table (kind + package or class name + comma-separated modules)
+ * The webfx.xml artifact remains the canonical source. This compact version is written by the export at the same time,
+ * from the same elements, as they are produced.
+ */
+final class CompactExportSnapshot implements Closeable {
+
+    static final String ARTIFACT_TYPE = "zip";
+    static final String ARTIFACT_CLASSIFIER = "webfx-snapshot";
+
+    // Fixed entry time for reproducible builds
+    private static final long ENTRY_TIME = 946684800000L; // 2000-01-01
+
+    private final Path compactArtifactPath;
+    private final ZipOutputStream zos;
+    private final StringBuilder index = new StringBuilder();
+    private boolean completed;
+
+    CompactExportSnapshot(Path compactArtifactPath) throws IOException {
+        this.compactArtifactPath = compactArtifactPath;
+        Files.createDirectories(compactArtifactPath.getParent());
+        zos = new ZipOutputStream(Files.newOutputStream(compactArtifactPath));
+    }
+
+    /**
+     * Writes the <project/> element of an exported module.
+     */
+    void writeProject(Element projectElement) throws IOException {
+        String moduleName = projectElement.attributeValue("name");
+        String entryName = "modules/" + moduleName + ".xml";
+        writeEntry(entryName, projectElement.asXML());
+        index.append(moduleName).append('\t').append(entryName).append('\n');
+    }
+
+    /**
+     * Writes the usages table from the <usages/> element of the export snapshot.
+     */
+    void writeUsages(Element usagesElement) throws IOException {
+        writeEntry("usages.tsv", toUsagesTable(usagesElement));
+    }
+
+    /**
+     * Writes the index, after all the modules have been written. The compact snapshot is deleted on close if this
+     * method hasn't been called (ex: failed export).
+     */
+    void complete() throws IOException {
+        writeEntry("index.tsv", index.toString());
+        completed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zos.close();
+        if (!completed)
+            Files.deleteIfExists(compactArtifactPath);
+    }
+
+    private static String toUsagesTable(Element usagesElement) {
+        StringBuilder table = new StringBuilder();
+        for (Element packageOrClassElement : usagesElement.elements()) {
+            table.append(packageOrClassElement.getName()).append('\t').append(packageOrClassElement.attributeValue("name")).append('\t');
+            boolean first = true;
+            for (Element moduleElement : packageOrClassElement.elements("module")) {
+                if (!first)
+                    table.append(',');
+                first = false;
+                table.append(moduleElement.getTextTrim());
+            }
+            table.append('\n');
+        }
+        return table.toString();
+    }
+
+    private void writeEntry(String entryName, String content) throws IOException {
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setTime(ENTRY_TIME);
+        zos.putNextEntry(entry);
+        zos.write(content.getBytes(StandardCharsets.UTF_8));
+        zos.closeEntry();
+    }
+}
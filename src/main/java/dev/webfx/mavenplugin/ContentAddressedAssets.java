@@ -0,0 +1,213 @@
+package dev.webfx.mavenplugin;
+
+import dev.webfx.cli.util.textfile.TextFileReaderWriter;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed copies of the assets referenced by index.html and its stylesheets (except the GWT files, which are
+ * already content-addressed or are entry points), so static servers can send immutable cache headers for them. Each
+ * asset is copied under a hashed name (ex: css/app.css => css/app.1a2b3c4d5e.css) and the references in index.html and
+ * in the stylesheets are rewritten to these names (the stylesheets are hashed after the rewriting of their own
+ * references). The original files are kept, as they may also be requested by the application code at runtime.
+ *
+ * The generated names are recorded in a file kept under target/ (hashed path = original path), so a next run on the same
+ * output recognizes them (ex: in an index.html already rewritten) without guessing from the file names, and deletes the
+ * hashed copies (and their precompressed variants) that are no longer referenced.
+ *
+ * The caching rules are written in the _headers file format (Netlify, Cloudflare Pages, etc...): immutable for the
+ * hashed names, no-cache for the entry points (index.html, .nocache.js, the service worker and its version file).
+ */
+final class ContentAddressedAssets {
+
+    static final String CACHE_RULES_FILE_NAME = "_headers";
+
+    private static final int HASH_LENGTH = 10;
+    private static final Pattern HTML_REFERENCE_PATTERN = Pattern.compile("(?<=\\s)(?:src|href)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CSS_REFERENCE_PATTERN = Pattern.compile("url\\(\\s*(?:\"([^\"]*)\"|'([^']*)'|([^'\")\\s]+))\\s*\\)|@import\\s+(?:\"([^\"]*)\"|'([^']*)')", Pattern.CASE_INSENSITIVE);
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String NO_CACHE_CONTROL = "no-cache";
+
+    private final Path gwtAppPath;
+    private final Set<String> candidates;
+    private final Map<String, String> previousOriginalPaths; // hashed path -> original path (generated by the previous run)
+    private final Map<String, String> hashedPaths = new LinkedHashMap<>(); // original path -> hashed path
+    private final Set<String> inProgress = new HashSet<>(); // to break the cycles between stylesheets
+
+    private ContentAddressedAssets(Path gwtAppPath, Set<String> candidates, Map<String, String> previousOriginalPaths) {
+        this.gwtAppPath = gwtAppPath;
+        this.candidates = candidates;
+        this.previousOriginalPaths = previousOriginalPaths;
+    }
+
+    /**
+     * Writes the hashed copies of the assets referenced by index.html, rewrites index.html, deletes the hashed copies of
+     * the previous run that are no longer referenced, and writes the caching rules file and the generated names file.
+     * Returns the hashed paths of the renamed assets (original path -> hashed path).
+     */
+    static Map<String, String> apply(Path gwtAppPath, Path generatedNamesPath, Log log) throws IOException {
+        Path indexHtmlPath = gwtAppPath.resolve("index.html");
+        Map<String, String> previousOriginalPaths = readGeneratedNames(generatedNamesPath, gwtAppPath);
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String assetPath : HtmlAssetScanner.scan(indexHtmlPath).getAllAssets()) {
+            // The hashed copies generated by the previous run are hashed again from their original (index.html may
+            // already reference them, if it was not regenerated since)
+            String originalPath = previousOriginalPaths.getOrDefault(assetPath, assetPath);
+            if (!isGwtFile(originalPath) && Files.isRegularFile(gwtAppPath.resolve(originalPath.substring(1))))
+                candidates.add(originalPath);
+        }
+        ContentAddressedAssets assets = new ContentAddressedAssets(gwtAppPath, candidates, previousOriginalPaths);
+        for (String assetPath : new ArrayList<>(candidates))
+            assets.getHashedPath(assetPath);
+        String indexHtml = assets.rewriteHtmlReferences(Files.readString(indexHtmlPath, StandardCharsets.UTF_8), "/index.html");
+        TextFileReaderWriter.writeTextFileIfNewOrModified(indexHtml, indexHtmlPath);
+        Set<String> hashedAssets = new TreeSet<>(assets.hashedPaths.values());
+        int deletedCount = 0;
+        for (String previousHashedPath : previousOriginalPaths.keySet())
+            if (!hashedAssets.contains(previousHashedPath)) {
+                Path previousHashedFile = gwtAppPath.resolve(previousHashedPath.substring(1));
+                Files.deleteIfExists(previousHashedFile.resolveSibling(previousHashedFile.getFileName() + ".gz"));
+                Files.deleteIfExists(previousHashedFile.resolveSibling(previousHashedFile.getFileName() + ".br"));
+                if (Files.deleteIfExists(previousHashedFile))
+                    deletedCount++;
+            }
+        writeGeneratedNames(generatedNamesPath, assets.hashedPaths);
+        writeCacheRules(gwtAppPath.resolve(CACHE_RULES_FILE_NAME), hashedAssets);
+        log.info("Content-addressed " + assets.hashedPaths.size() + " assets referenced by index.html"
+                 + (deletedCount == 0 ? "" : " (" + deletedCount + " outdated hashed copies deleted)"));
+        return assets.hashedPaths;
+    }
+
+    // Returns the hashed copies recorded by the previous run that still exist (hashed path -> original path)
+    private static Map<String, String> readGeneratedNames(Path generatedNamesPath, Path gwtAppPath) {
+        Map<String, String> originalPaths = new HashMap<>();
+        if (Files.isRegularFile(generatedNamesPath)) {
+            Properties properties = new Properties();
+            try (InputStream is = Files.newInputStream(generatedNamesPath)) {
+                properties.load(is);
+            } catch (IOException e) { // The hashed copies of the previous run are then just not recognized
+                properties.clear();
+            }
+            for (String hashedPath : properties.stringPropertyNames())
+                if (hashedPath.startsWith("/") && Files.isRegularFile(gwtAppPath.resolve(hashedPath.substring(1))))
+                    originalPaths.put(hashedPath, properties.getProperty(hashedPath));
+        }
+        return originalPaths;
+    }
+
+    private static void writeGeneratedNames(Path generatedNamesPath, Map<String, String> hashedPaths) throws IOException {
+        Properties properties = new Properties();
+        hashedPaths.forEach((originalPath, hashedPath) -> properties.setProperty(hashedPath, originalPath));
+        Files.createDirectories(generatedNamesPath.getParent());
+        try (OutputStream os = Files.newOutputStream(generatedNamesPath)) {
+            properties.store(os, "Content-addressed copies generated by the WebFX pwa goal (generated file)");
+        }
+    }
+
+    private static boolean isGwtFile(String assetPath) {
+        return assetPath.endsWith(".cache.js") || assetPath.endsWith(".nocache.js");
+    }
+
+    private String getHashedPath(String assetPath) {
+        String hashedPath = hashedPaths.get(assetPath);
+        if (hashedPath != null || !candidates.contains(assetPath) || !inProgress.add(assetPath))
+            return hashedPath;
+        try {
+            Path file = gwtAppPath.resolve(assetPath.substring(1));
+            byte[] content;
+            if (assetPath.toLowerCase(Locale.ROOT).endsWith(".css")) // The references of the stylesheets are rewritten first
+                content = rewriteReferences(Files.readString(file, StandardCharsets.UTF_8), CSS_REFERENCE_PATTERN, assetPath).getBytes(StandardCharsets.UTF_8);
+            else
+                content = Files.readAllBytes(file);
+            String hash = PwaMojo.toHex(ExportFingerprints.newSha256().digest(content)).substring(0, HASH_LENGTH);
+            String fileName = file.getFileName().toString();
+            int dotIndex = fileName.lastIndexOf('.');
+            String hashedFileName = dotIndex <= 0 ? fileName + "." + hash : fileName.substring(0, dotIndex) + "." + hash + fileName.substring(dotIndex);
+            Path hashedFile = file.resolveSibling(hashedFileName);
+            if (!Files.isRegularFile(hashedFile)) // The name is derived from the content, so an existing file is up to date
+                Files.write(hashedFile, content);
+            hashedPath = assetPath.substring(0, assetPath.length() - fileName.length()) + hashedFileName;
+            hashedPaths.put(assetPath, hashedPath);
+        } catch (IOException e) { // The asset keeps its original name in that case
+            candidates.remove(assetPath);
+        } finally {
+            inProgress.remove(assetPath);
+        }
+        return hashedPath;
+    }
+
+    // Rewrites the references of the renamed assets in the tags of that html (src and href attributes, and url() of the
+    // style attributes) and in its style elements. The tag offsets of the tokenizer are used, so the comments and the
+    // script contents are left unchanged.
+    private String rewriteHtmlReferences(String html, String htmlAssetPath) {
+        StringBuilder sb = new StringBuilder();
+        int[] last = { 0 };
+        HtmlAssetScanner.tokenize(html, (name, endTag, attributes, rawText, tagStart, tagEnd) -> {
+            if (!endTag) {
+                String tag = html.substring(tagStart, tagEnd);
+                tag = rewriteReferences(tag, HTML_REFERENCE_PATTERN, htmlAssetPath);
+                tag = rewriteReferences(tag, CSS_REFERENCE_PATTERN, htmlAssetPath);
+                sb.append(html, last[0], tagStart).append(tag);
+                last[0] = tagEnd;
+                if (name.equals("style")) {
+                    sb.append(rewriteReferences(rawText, CSS_REFERENCE_PATTERN, htmlAssetPath));
+                    last[0] = tagEnd + rawText.length();
+                }
+            }
+            return true;
+        });
+        return sb.append(html, last[0], html.length()).toString();
+    }
+
+    // Rewrites the references (captured in the groups of that pattern) of the renamed assets in that text
+    private String rewriteReferences(String text, Pattern pattern, String baseAssetPath) {
+        return replaceGroups(text, pattern, reference -> {
+            String assetPath = HtmlAssetScanner.resolveReference(reference, baseAssetPath);
+            String hashedPath = assetPath == null ? null : getHashedPath(previousOriginalPaths.getOrDefault(assetPath, assetPath));
+            if (hashedPath == null)
+                return reference;
+            // Replacing only the file name, so the reference stays relative (and keeps its query or fragment)
+            String originalName = assetPath.substring(assetPath.lastIndexOf('/') + 1);
+            String hashedName = hashedPath.substring(hashedPath.lastIndexOf('/') + 1);
+            int nameIndex = reference.lastIndexOf(originalName);
+            return nameIndex < 0 ? reference : reference.substring(0, nameIndex) + hashedName + reference.substring(nameIndex + originalName.length());
+        });
+    }
+
+    private static String replaceGroups(String text, Pattern pattern, Function<String, String> replacer) {
+        Matcher matcher = pattern.matcher(text);
+        StringBuilder sb = new StringBuilder();
+        int last = 0;
+        while (matcher.find()) {
+            for (int g = 1; g <= matcher.groupCount(); g++) {
+                if (matcher.group(g) != null) {
+                    sb.append(text, last, matcher.start(g)).append(replacer.apply(matcher.group(g)));
+                    last = matcher.end(g);
+                    break;
+                }
+            }
+        }
+        return sb.append(text, last, text.length()).toString();
+    }
+
+    private static void writeCacheRules(Path cacheRulesPath, Set<String> hashedAssets) throws IOException {
+        StringBuilder sb = new StringBuilder("# Caching rules generated by the WebFX pwa goal (_headers format)\n");
+        for (String entryPoint : List.of("/", "/index.html", "/*.nocache.js", "/pwa-service-worker.js", "/pwa-manifest.json", "/" + PwaMojo.VERSION_FILE_NAME))
+            sb.append(entryPoint).append("\n  Cache-Control: ").append(NO_CACHE_CONTROL).append('\n');
+        sb.append("/*.cache.js\n  Cache-Control: ").append(IMMUTABLE_CACHE_CONTROL).append('\n');
+        for (String hashedAsset : hashedAssets)
+            sb.append(hashedAsset).append("\n  Cache-Control: ").append(IMMUTABLE_CACHE_CONTROL).append('\n');
+        TextFileReaderWriter.writeTextFileIfNewOrModified(sb.toString(), cacheRulesPath);
+    }
+}
@@ -0,0 +1,151 @@
+package dev.webfx.mavenplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Input fingerprints of an export, persisted under target/ so the next export can detect whether anything changed since
+ * the previous run. Each exported module (this and children modules in depth) is fingerprinted from its webfx.xml, its
+ * pom.xml and all the files under its src/main directory (relative path + size + last modified time). The other inputs
+ * of the export (plugin version, export options, parent poms) are recorded as a single string.
+ *
+ * Note: the export is considered up to date only if all the fingerprints match, because the <project/> fragment of a
+ * module also depends on the other modules (ex: used-by-source-modules, third-party versions from the parent poms).
+ */
+final class ExportFingerprints {
+
+    private static final String ROOT_KEY = "root";
+    private static final String INPUTS_KEY = "inputs";
+    private static final String DIRECTORY_SUFFIX = ".directory";
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+
+    private final Map<String, Path> moduleDirectories = new LinkedHashMap<>();
+    private final Map<String, String> moduleFingerprints = new LinkedHashMap<>();
+    private String rootModuleName;
+    private String inputs = "";
+
+    String getRootModuleName() {
+        return rootModuleName;
+    }
+
+    void setInputs(String inputs) {
+        this.inputs = inputs == null ? "" : inputs;
+    }
+
+    void put(String moduleName, Path moduleDirectory, String fingerprint) {
+        if (rootModuleName == null) // The first module put is the root (getThisAndChildrenModulesInDepth() order)
+            rootModuleName = moduleName;
+        moduleDirectories.put(moduleName, moduleDirectory);
+        moduleFingerprints.put(moduleName, fingerprint);
+    }
+
+    /**
+     * Returns true if the recorded inputs are the passed ones and the recorded fingerprints still match the files on
+     * disk, meaning that none of the export inputs changed since they were recorded.
+     */
+    boolean isUpToDate(String inputs) {
+        if (moduleDirectories.isEmpty() || !this.inputs.equals(inputs == null ? "" : inputs))
+            return false;
+        for (Map.Entry<String, Path> entry : moduleDirectories.entrySet()) {
+            if (!computeModuleFingerprint(entry.getValue()).equals(moduleFingerprints.get(entry.getKey())))
+                return false;
+        }
+        return true;
+    }
+
+    static ExportFingerprints read(Path fingerprintsPath) {
+        if (!Files.isRegularFile(fingerprintsPath))
+            return null;
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(fingerprintsPath)) {
+            properties.load(is);
+        } catch (IOException e) {
+            return null;
+        }
+        ExportFingerprints fingerprints = new ExportFingerprints();
+        fingerprints.rootModuleName = properties.getProperty(ROOT_KEY);
+        fingerprints.inputs = properties.getProperty(INPUTS_KEY, "");
+        properties.stringPropertyNames().stream()
+            .filter(key -> key.endsWith(DIRECTORY_SUFFIX))
+            .sorted()
+            .forEach(key -> {
+                String moduleName = key.substring(0, key.length() - DIRECTORY_SUFFIX.length());
+                String fingerprint = properties.getProperty(moduleName + FINGERPRINT_SUFFIX);
+                if (fingerprint != null) {
+                    fingerprints.moduleDirectories.put(moduleName, Path.of(properties.getProperty(key)));
+                    fingerprints.moduleFingerprints.put(moduleName, fingerprint);
+                }
+            });
+        return fingerprints.rootModuleName == null ? null : fingerprints;
+    }
+
+    void write(Path fingerprintsPath) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ROOT_KEY, rootModuleName);
+        properties.setProperty(INPUTS_KEY, inputs);
+        moduleDirectories.forEach((moduleName, moduleDirectory) -> {
+            properties.setProperty(moduleName + DIRECTORY_SUFFIX, moduleDirectory.toString());
+            properties.setProperty(moduleName + FINGERPRINT_SUFFIX, moduleFingerprints.get(moduleName));
+        });
+        Files.createDirectories(fingerprintsPath.getParent());
+        try (OutputStream os = Files.newOutputStream(fingerprintsPath)) {
+            properties.store(os, "WebFX export input fingerprints (generated file)");
+        }
+    }
+
+    static String computeModuleFingerprint(Path moduleDirectory) {
+        MessageDigest md = newSha256();
+        digestFileStamp(md, moduleDirectory, moduleDirectory.resolve("webfx.xml"));
+        digestFileStamp(md, moduleDirectory, moduleDirectory.resolve("pom.xml"));
+        Path srcMainDirectory = moduleDirectory.resolve("src/main");
+        if (Files.isDirectory(srcMainDirectory)) {
+            try (Stream<Path> stream = Files.walk(srcMainDirectory)) {
+                stream.filter(Files::isRegularFile)
+                    .sorted()
+                    .forEach(file -> digestFileStamp(md, moduleDirectory, file));
+            } catch (IOException e) {
+                // An unreadable source tree can't be considered unchanged, so we return a fingerprint that never matches
+                return "unreadable:" + System.nanoTime();
+            }
+        }
+        return PwaMojo.toHex(md.digest());
+    }
+
+    /**
+     * Returns the stamp of a file outside the modules (ex: parent pom or plugin jar) to be included in the inputs.
+     */
+    static String computeFileStamp(Path file) {
+        try {
+            return file + "|" + Files.size(file) + '|' + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return file + "|-";
+        }
+    }
+
+    private static void digestFileStamp(MessageDigest md, Path moduleDirectory, Path file) {
+        String stamp;
+        try {
+            stamp = moduleDirectory.relativize(file).toString().replace('\\', '/')
+                    + '|' + Files.size(file) + '|' + Files.getLastModifiedTime(file).toMillis() + '\n';
+        } catch (IOException e) { // Typically a missing webfx.xml or pom.xml
+            stamp = moduleDirectory.relativize(file) + "|-\n";
+        }
+        md.update(stamp.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { // Never happens (SHA-256 is mandatory in all JVMs)
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -48,6 +49,42 @@ public final class ExportMojo extends AbstractMojo {
 	 */
 	@Parameter(property="failOnError", defaultValue="true")
 	private boolean failOnError;
+
+	/**
+	 * Skip the export when none of its inputs (webfx.xml, pom.xml and sources of this and children modules, parent poms,
+	 * plugin version and export options) changed since the previous run. Disabled by default because other inputs (ex:
+	 * third-party libraries in the maven repository) are not fingerprinted.
+	 */
+	@Parameter(property="incrementalExport", defaultValue="false")
+	private boolean incrementalExport;
+
+	/**
+	 * Write the export snapshot child by child to the artifact file, instead of building and formatting the whole
+	 * document in memory (reduces the memory footprint for big libraries)
+	 */
+	@Parameter(property="streamingExport", defaultValue="false")
+	private boolean streamingExport;
+
+	/**
+	 * Directory of the persistent cache of the packages exported by the third-party libraries (shared between builds),
+	 * so their sources are downloaded and scanned only the first time they are exported. Empty = no cache.
+	 */
+	@Parameter(property="exportedPackagesCacheDirectory", defaultValue="${user.home}/.m2/webfx/exported-packages")
+	private String exportedPackagesCacheDirectory;
+
+	/**
+	 * Number of days after which an unused entry is evicted from the exported packages cache
+	 */
+	@Parameter(property="exportedPackagesCacheMaxUnusedDays", defaultValue="180")
+	private int exportedPackagesCacheMaxUnusedDays;
+
+	/**
+	 * Also publish a compact indexed version of the export snapshot (zip with one entry per module + usages table)
+	 * that allows importers to load only the modules they need. The webfx.xml artifact remains the canonical fallback.
+	 */
+	@Parameter(property="compactExport", defaultValue="false")
+	private boolean compactExport;
+
 	
 	/**
 	 * Maven project injection
@@ -55,9 +92,15 @@ public final class ExportMojo extends AbstractMojo {
 	@Parameter(readonly = true, defaultValue = "${project}" )
     private MavenProject project;
 
-	@Component
+	@Parameter(defaultValue = "${session}", required = true, readonly = true)
 	private MavenSession session;
 
+	/**
+	 * Version of this plugin (part of the incremental export inputs)
+	 */
+	@Parameter(readonly = true, defaultValue = "${plugin.version}")
+	private String pluginVersion;
+
 	/**
      * Maven project helper injection
      */
@@ -71,11 +114,23 @@ public final class ExportMojo extends AbstractMojo {
 	 */
 	@Override
 	public void execute() throws MojoFailureException {
+		try {
+			executeExport();
+		} finally {
+			BuildTracer.writeTraceAndLogSummary("export", session, getLog());
+		}
+	}
+
+	private void executeExport() throws MojoFailureException {
 
 		getLog().debug("-------- export parameters --------");
 		getLog().debug("projectDirectory: " + projectDirectory);
 		getLog().debug("targetDirectory: " + targetDirectory);
 		getLog().debug("failOnError: " + failOnError);
+		getLog().debug("incrementalExport: " + incrementalExport);
+		getLog().debug("streamingExport: " + streamingExport);
+		getLog().debug("exportedPackagesCacheDirectory: " + exportedPackagesCacheDirectory);
+		getLog().debug("compactExport: " + compactExport);
 		getLog().debug("-----------------------------------");
 
 		LOGGER = getLog()::info;
@@ -97,17 +152,66 @@ public final class ExportMojo extends AbstractMojo {
 		}
 
 		File webfxXmlArtifactFile = new File(new File(targetDirectory), "webfx-artifact/webfx.xml");
+		File exportFingerprintsFile = new File(new File(targetDirectory), "webfx-export-fingerprints.properties");
+		File compactSnapshotArtifactFile = new File(new File(targetDirectory), "webfx-artifact/webfx-snapshot.zip");
 
-		// Calling the export() method that generates the webfx.xml artifact
-		LoggerUtil.configureWebFXLoggerForMaven(getLog());
-		int result = export(projectDirectory, webfxXmlArtifactFile.getAbsolutePath());
-		if (failOnError && result < 0) {
-			throw new MojoFailureException("Failed to complete export, result=" + result);
+		// Skipping the generation (and the workspace creation) if nothing changed since the previous export
+		boolean upToDate;
+		String exportInputs = incrementalExport ? computeExportInputs() : null;
+		try (BuildTracer.Span ignored = BuildTracer.span("incremental check")) {
+			ExportFingerprints previousFingerprints = incrementalExport ? ExportFingerprints.read(exportFingerprintsFile.toPath()) : null;
+			upToDate = previousFingerprints != null && webfxXmlArtifactFile.isFile()
+				&& (!compactExport || compactSnapshotArtifactFile.isFile()) && previousFingerprints.isUpToDate(exportInputs);
+		}
+		if (upToDate) {
+			getLog().info("Skipping export generation because no input changed since the previous export");
+		} else {
+			// Calling the export() method that generates the webfx.xml artifact
+			LoggerUtil.configureWebFXLoggerForMaven(getLog());
+			ExportOptions options = new ExportOptions();
+			options.exportFingerprintsPath = incrementalExport ? exportFingerprintsFile.getAbsolutePath() : null;
+			options.exportInputs = exportInputs;
+			if (compactExport)
+				options.compactSnapshotPath = compactSnapshotArtifactFile.getAbsolutePath();
+			options.streaming = streamingExport;
+			options.session = session;
+			if (exportedPackagesCacheDirectory != null && !exportedPackagesCacheDirectory.isBlank())
+				options.exportedPackagesCache = new ExportedPackagesCache(Path.of(exportedPackagesCacheDirectory), Duration.ofDays(exportedPackagesCacheMaxUnusedDays));
+			int result = export(projectDirectory, webfxXmlArtifactFile.getAbsolutePath(), options);
+			if (failOnError && result < 0) {
+				throw new MojoFailureException("Failed to complete export, result=" + result);
+			}
 		}
 
 		// Attaching the generated artifact, so it will be included in the `install` phase and eventually deployed
 		projectHelper.attachArtifact(project, "xml", "webfx", webfxXmlArtifactFile);
 		getLog().info("Attached " + webfxXmlArtifactFile.getName() + " to module " + project.getArtifactId() + " for later deploy");
+
+		// Same with the compact version of the export snapshot (written by the export, unless the module has no export
+		// snapshot)
+		if (compactExport) {
+			if (compactSnapshotArtifactFile.isFile()) {
+				projectHelper.attachArtifact(project, CompactExportSnapshot.ARTIFACT_TYPE, CompactExportSnapshot.ARTIFACT_CLASSIFIER, compactSnapshotArtifactFile);
+				getLog().info("Attached " + compactSnapshotArtifactFile.getName() + " to module " + project.getArtifactId() + " for later deploy");
+			}
+		}
+	}
+
+	// Returns the inputs of the export other than the modules files, i.e. the plugin version (with the stamp of its jar for
+	// snapshot versions), the options that affect the generated file, and the stamps of the parent poms (which can define
+	// the versions of the third-party libraries)
+	private String computeExportInputs() {
+		StringBuilder sb = new StringBuilder("plugin=").append(pluginVersion);
+		try {
+			sb.append('|').append(ExportFingerprints.computeFileStamp(Path.of(ExportMojo.class.getProtectionDomain().getCodeSource().getLocation().toURI())));
+		} catch (Exception ignored) { // Ex: no code source
+		}
+		sb.append(";streaming=").append(streamingExport)
+			.append(";exportedPackagesCache=").append(exportedPackagesCacheDirectory);
+		for (MavenProject parent = project.getParent(); parent != null; parent = parent.getParent())
+			if (parent.getFile() != null)
+				sb.append(";parent=").append(ExportFingerprints.computeFileStamp(parent.getFile().toPath()));
+		return sb.toString();
 	}
 
 	private final static String EXPORT_SNAPSHOT_TAG = "export-snapshot";
@@ -131,26 +235,63 @@ public final class ExportMojo extends AbstractMojo {
 
 	// This method is called by the WebFX Maven plugin
 	public static int export(String projectDirectory, String webfxXmlArtifactPath) {
+		return export(projectDirectory, webfxXmlArtifactPath, new ExportOptions());
+	}
+
+	// Version with options. In incremental mode, the fingerprints of the exported modules are recorded for next time.
+	static int export(String projectDirectory, String webfxXmlArtifactPath, ExportOptions options) {
+		if (LOGGER == null) // Ex: when called outside the mojo execution
+			LOGGER = Logger::log;
+		Path fingerprintsPath = options.exportFingerprintsPath == null ? null : Path.of(options.exportFingerprintsPath);
 		try {
-			CommandWorkspace workspace = new CommandWorkspace(projectDirectory);
+			CommandWorkspace workspace = SessionWorkspaces.getOrCreateWorkspace(options.session, projectDirectory);
 			Path artifactPath = Path.of(webfxXmlArtifactPath);
 			Files.createDirectories(artifactPath.getParent());
+			if (options.compactSnapshotPath != null) // Written again only if the export generates an export snapshot
+				Files.deleteIfExists(Path.of(options.compactSnapshotPath));
 			WebFxModuleFile webFxModuleFile = workspace.getWorkingDevProjectModule().getWebFxModuleFile();
-			Document document = exportDocument(webFxModuleFile);
+			ExportFingerprints newFingerprints = null;
+			if (fingerprintsPath != null) {
+				newFingerprints = new ExportFingerprints();
+				newFingerprints.setInputs(options.exportInputs);
+				// Deleting the fingerprints now, so they are not considered valid if this export fails
+				Files.deleteIfExists(fingerprintsPath);
+			}
+			Document document = exportDocument(webFxModuleFile, newFingerprints, options, options.streaming ? artifactPath : null);
+			int result;
 			if (document != null) {
-				TextFileReaderWriter.writeTextFile(XmlUtil.formatXmlText(document), artifactPath);
-				return 1;
+				if (!options.streaming) // already written otherwise
+					try (BuildTracer.Span ignored = BuildTracer.span("artifact writing")) {
+						TextFileReaderWriter.writeTextFile(XmlUtil.formatXmlText(document), artifactPath);
+					}
+				result = 1;
 			} else {
 				Files.copy(webFxModuleFile.getModuleFilePath(), artifactPath, StandardCopyOption.REPLACE_EXISTING);
-				return 0;
+				result = 0;
+			}
+			if (newFingerprints != null) {
+				if (newFingerprints.getRootModuleName() == null) // Happens when no export snapshot is generated
+					recordModuleFingerprint(webFxModuleFile.getProjectModule(), newFingerprints);
+				newFingerprints.write(fingerprintsPath);
 			}
+			return result;
 		} catch (Exception e) {
 			Logger.log("ERROR: " + e.getMessage());
 			return -1;
+		} finally {
+			// The export modified the webfx.xml document of the workspace, so it mustn't be reused by the next goals
+			SessionWorkspaces.invalidateWorkspace(options.session, projectDirectory);
 		}
 	}
 
-	private static Document exportDocument(WebFxModuleFile webFxModuleFile) {
+	private static void recordModuleFingerprint(ProjectModule pm, ExportFingerprints fingerprints) {
+		Path moduleDirectory = pm.getWebFxModuleFile().getModuleFilePath().getParent();
+		fingerprints.put(pm.getName(), moduleDirectory, ExportFingerprints.computeModuleFingerprint(moduleDirectory));
+	}
+
+	// Note: when streamingArtifactPath is not null, the export snapshot is directly written to that file, and the returned
+	// document doesn't contain it.
+	private static Document exportDocument(WebFxModuleFile webFxModuleFile, ExportFingerprints newFingerprints, ExportOptions options, Path streamingArtifactPath) throws Exception {
 		Document document = webFxModuleFile.getDocument();
 		Element rootElement = document.getRootElement();
 		Element exportElement = XmlUtil.lookupElement(rootElement, EXPORT_SNAPSHOT_TAG);
@@ -162,14 +303,59 @@ public final class ExportMojo extends AbstractMojo {
 		} else {
 			exportElement = XmlUtil.createElement(EXPORT_SNAPSHOT_TAG, rootElement);
 		}
-		if (!webFxModuleFile.generatesExportSnapshot())
+		if (!webFxModuleFile.generatesExportSnapshot()) {
+			if (exportNodeWasPresent && streamingArtifactPath != null)
+				TextFileReaderWriter.writeTextFile(XmlUtil.formatXmlText(document), streamingArtifactPath);
 			return exportNodeWasPresent ? document : null;
+		}
+		// The compact snapshot (if requested) is written at the same time, from the same elements as they are produced
+		try (CompactExportSnapshot compactSnapshot = options.compactSnapshotPath == null ? null : new CompactExportSnapshot(Path.of(options.compactSnapshotPath))) {
+			if (streamingArtifactPath == null)
+				exportDocument(document, webFxModuleFile, exportElement, newFingerprints, options, null, compactSnapshot);
+			else {
+				// In streaming mode, the export element is appended to the document from the start, so we can write
+				// everything that comes before its content, which is then written element by element as it is produced.
+				XmlUtil.appendIndentNode(DocumentHelper.createComment(EXPORT_SECTION_COMMENT), rootElement, true);
+				XmlUtil.appendIndentNode(exportElement, rootElement, true);
+				try (ExportSnapshotWriter snapshotWriter = new ExportSnapshotWriter(streamingArtifactPath, EXPORT_SNAPSHOT_TAG)) {
+					snapshotWriter.writeHead(document, exportElement);
+					exportDocument(document, webFxModuleFile, exportElement, newFingerprints, options, snapshotWriter, compactSnapshot);
+					snapshotWriter.writeTail();
+				}
+			}
+			if (compactSnapshot != null)
+				compactSnapshot.complete();
+		}
+		return document;
+	}
+
+	private static Document exportDocument(Document document, WebFxModuleFile webFxModuleFile, Element exportElement, ExportFingerprints newFingerprints, ExportOptions options, ExportSnapshotWriter snapshotWriter, CompactExportSnapshot compactSnapshot) throws Exception {
+		Element rootElement = document.getRootElement();
 		// Exporting this and children modules in depth
 		LOGGER.accept("Exporting children modules");
-		final Element finalExportElement = exportElement;
 		ProjectModule projectModule = webFxModuleFile.getProjectModule();
+		List<ProjectModule> childModules = new ArrayList<>();
 		projectModule.getThisAndChildrenModulesInDepth()
-				.forEach(pm -> exportChildModuleProject(pm, projectModule, finalExportElement, document));
+				.forEach(pm -> {
+					if (newFingerprints != null)
+						recordModuleFingerprint(pm, newFingerprints);
+					childModules.add(pm);
+				});
+		for (ProjectModule pm : childModules) {
+			Element childProjectElement;
+			try (BuildTracer.Span ignored = BuildTracer.span("export child", pm.getName())) {
+				childProjectElement = exportChildModuleProject(pm, projectModule, exportElement, document, options);
+			}
+			if (childProjectElement == null)
+				continue;
+			// The child element is detached until this point, so it can be written directly to the streamed artifact
+			if (compactSnapshot != null)
+				compactSnapshot.writeProject(childProjectElement);
+			if (snapshotWriter != null)
+				snapshotWriter.writeElement(childProjectElement);
+			else
+				XmlUtil.appendIndentNode(childProjectElement, exportElement, true);
+		}
 		// Adding usage to resolve if-uses-java-package and if-uses-java-class directives without downloading the sources
 		ReusableStream<ProjectModule> usageCoverage = projectModule.getDirectivesUsageCoverage();
 		// First pass: searching all the if-uses-java-package and if-java-classes directives and collecting the packages or classes that require to find the usage
@@ -177,16 +363,27 @@ public final class ExportMojo extends AbstractMojo {
 		// We initialize the packages and classes with those always used by the WebFX CLI (hardcoded in the code)
 		Set<String> packagesListedInDirectives = new HashSet<>(List.of("java.time", "java.text", "java.lang.ref", "java.util.regex", "netscape.javascript"));
 		Set<String> classesListedInDirectives = new HashSet<>(List.of("java.io.EOFException", "java.util.ServiceLoader", "java.util.Properties"));
-		usageCoverage
-				.forEach(pm -> collectJavaPackagesAndClassesListedInDirectives(pm, packagesListedInDirectives, classesListedInDirectives));
+		try (BuildTracer.Span ignored = BuildTracer.span("directives collection")) {
+			usageCoverage
+					.forEach(pm -> collectJavaPackagesAndClassesListedInDirectives(pm, packagesListedInDirectives, classesListedInDirectives));
+		}
 		LOGGER.accept("- packages listed in directives: " + packagesListedInDirectives);
 		LOGGER.accept("- classes listed in directives: " + classesListedInDirectives);
 		// Third pass: finding usage
 		LOGGER.accept("Reporting usages in export");
 		Element usagesElement = XmlUtil.createElement("usages", rootElement);
-		computeAndPopulateUsagesOfJavaPackagesAndClasses(usagesElement, usageCoverage,
-				convertSetToSortedList(packagesListedInDirectives),
-				convertSetToSortedList(classesListedInDirectives));
+		try (BuildTracer.Span ignored = BuildTracer.span("usages computation")) {
+			computeAndPopulateUsagesOfJavaPackagesAndClasses(usagesElement, usageCoverage,
+					convertSetToSortedList(packagesListedInDirectives),
+					convertSetToSortedList(classesListedInDirectives));
+		}
+		if (compactSnapshot != null && usagesElement.nodeCount() > 0)
+			compactSnapshot.writeUsages(usagesElement);
+		if (snapshotWriter != null) {
+			if (usagesElement.nodeCount() > 0)
+				snapshotWriter.writeElement(usagesElement);
+			return document;
+		}
 		if (usagesElement.nodeCount() > 0)
 			XmlUtil.appendIndentNode(usagesElement, exportElement, true);
 		XmlUtil.appendIndentNode(DocumentHelper.createComment(EXPORT_SECTION_COMMENT), rootElement, true);
@@ -200,7 +397,9 @@ public final class ExportMojo extends AbstractMojo {
 		return list;
 	}
 
-	private static void exportChildModuleProject(ProjectModule childModule, ProjectModule projectModule, Element exportElement, Document exportDocument) {
+	// Returns the detached <project/> element of the child module in the export snapshot (or null if it has no webfx.xml)
+	private static Element exportChildModuleProject(ProjectModule childModule, ProjectModule projectModule, Element exportElement, Document exportDocument, ExportOptions options) {
+		ExportedPackagesCache exportedPackagesCache = options.exportedPackagesCache;
 		LOGGER.accept("Exporting child " + childModule.getName());
 		Document childDocument = childModule.getWebFxModuleFile().getDocument();
 		if (childDocument != null) {
@@ -228,10 +427,21 @@ public final class ExportMojo extends AbstractMojo {
 					// Also excluding the snapshots because the exported packages may change in the future
 					.filter(libraryModule -> !libraryModule.getVersion().contains("SNAPSHOT"))
 					.forEach(libraryModule -> {
-						ProjectModule libraryProjectModule = projectModule.searchRegisteredProjectModule(libraryModule.getName(), true);
-						if (libraryProjectModule != null)
-							libraryProjectModule.getMainJavaSourceRootAnalyzer().getSourcePackages()
-									.forEach(p -> XmlUtil.appendElementWithTextContentIfNotAlreadyExists(libraryModule.getXmlNode(), "exported-packages/package", p, true));
+						// The released libraries never change, so their exported packages can be cached between builds
+						List<String> exportedPackages = exportedPackagesCache == null ? null : exportedPackagesCache.get(libraryModule);
+						if (exportedPackages == null) {
+							ProjectModule libraryProjectModule = projectModule.searchRegisteredProjectModule(libraryModule.getName(), true);
+							if (libraryProjectModule != null) {
+								int errorCount = LoggerUtil.getErrorCount();
+								exportedPackages = new ArrayList<>();
+								libraryProjectModule.getMainJavaSourceRootAnalyzer().getSourcePackages().forEach(exportedPackages::add);
+								// Not caching an empty or possibly partial result (ex: failed download of the sources)
+								if (exportedPackagesCache != null && !exportedPackages.isEmpty() && LoggerUtil.getErrorCount() == errorCount)
+									exportedPackagesCache.put(libraryModule, exportedPackages);
+							}
+						}
+						if (exportedPackages != null)
+							exportedPackages.forEach(p -> XmlUtil.appendElementWithTextContentIfNotAlreadyExists(libraryModule.getXmlNode(), "exported-packages/package", p, true));
 					});
 			// Adding a snapshot of the source packages, because they must be listed in executable GWT modules, and also
 			// because we want to be able to evaluate the <source-packages/> directive without having to download the sources
@@ -262,8 +472,9 @@ public final class ExportMojo extends AbstractMojo {
 			childMainJavaSourceRootAnalyzer.getUsedRequiredJavaServices().forEach(js -> XmlUtil.appendElementWithTextContentIfNotAlreadyExists(childProjectElement, "used-services/required-service", js, true));
 			// Adding a snapshot of the used optional java services
 			childMainJavaSourceRootAnalyzer.getUsedOptionalJavaServices().forEach(js -> XmlUtil.appendElementWithTextContentIfNotAlreadyExists(childProjectElement, "used-services/optional-service", js, true));
-			XmlUtil.appendIndentNode(childProjectElement, exportElement, true);
+			return childProjectElement;
 		}
+		return null;
 	}
 
 	private static void collectJavaPackagesAndClassesListedInDirectives(ProjectModule pm, Set<String> packagesListedInDirectives /* to populate */, Set<String> classesListedInDirectives /* to populate */) {
@@ -291,28 +502,35 @@ public final class ExportMojo extends AbstractMojo {
 	}
 
 	private static void computeAndPopulateUsagesOfJavaPackagesAndClasses(Element usagesElement, ReusableStream<ProjectModule> searchScope, List<String> packagesListedInDirectives, List<String> classesListedInDirectives) {
-		computeAndPopulateUsagesOfJavaPackagesOrClasses(usagesElement, searchScope, packagesListedInDirectives, true);
-		computeAndPopulateUsagesOfJavaPackagesOrClasses(usagesElement, searchScope, classesListedInDirectives, false);
+		// Building the inverted index (package or class -> modules using it) in a single pass over the search scope.
+		// The modules are visited in sorted order, so the modules lists of the index are already sorted.
+		Map<String, List<String>> packagesUsages = new HashMap<>();
+		Map<String, List<String>> classesUsages = new HashMap<>();
+		searchScope
+				.distinct()
+				.sorted()
+				.forEach(pm -> indexUsagesOfJavaPackagesAndClasses(pm, packagesListedInDirectives, packagesUsages, classesListedInDirectives, classesUsages));
+		populateUsagesOfJavaPackagesOrClasses(usagesElement, packagesListedInDirectives, packagesUsages, true);
+		populateUsagesOfJavaPackagesOrClasses(usagesElement, classesListedInDirectives, classesUsages, false);
 	}
 
-	private static void computeAndPopulateUsagesOfJavaPackagesOrClasses(Element usagesElement, ReusableStream<ProjectModule> searchScope, List<String> packagesOrClassesListedInDirectives, boolean packages) {
-		packagesOrClassesListedInDirectives
-				.forEach(packageOrClassToFindUsage -> {
-					ReusableStream<ProjectModule> modulesUsingJavaPackagesOrClasses = searchScope
-							//.flatMap(ProjectModule::getThisAndTransitiveModules) // already done, no?
-							//.filter(ProjectModule.class::isInstance)
-							//.map(ProjectModule.class::cast)
-							.distinct()
-							.filter(m -> usesJavaPackageOrClass(m, packageOrClassToFindUsage, packages))
-							.sorted();
-					Element packageElement = XmlUtil.appendElementWithAttributeIfNotAlreadyExists(usagesElement, packages ? "java-package" : "java-class", "name", packageOrClassToFindUsage, true);
-					modulesUsingJavaPackagesOrClasses
-							.forEach(pm -> XmlUtil.appendElementWithTextContent(packageElement, "module", pm.getName()));
-				});
+	private static void indexUsagesOfJavaPackagesAndClasses(ProjectModule pm, List<String> packagesListedInDirectives, Map<String, List<String>> packagesUsages /* to populate */, List<String> classesListedInDirectives, Map<String, List<String>> classesUsages /* to populate */) {
+		JavaSourceRootAnalyzer analyzer = pm.getMainJavaSourceRootAnalyzer();
+		for (String javaPackage : packagesListedInDirectives)
+			if (analyzer.usesJavaPackage(javaPackage))
+				packagesUsages.computeIfAbsent(javaPackage, k -> new ArrayList<>()).add(pm.getName());
+		for (String javaClass : classesListedInDirectives)
+			if (analyzer.usesJavaClass(javaClass))
+				classesUsages.computeIfAbsent(javaClass, k -> new ArrayList<>()).add(pm.getName());
 	}
 
-	private static boolean usesJavaPackageOrClass(ProjectModule pm, String packageOrClassToFindUsage, boolean isPackage) {
-		return isPackage ? pm.getMainJavaSourceRootAnalyzer().usesJavaPackage(packageOrClassToFindUsage) : pm.getMainJavaSourceRootAnalyzer().usesJavaClass(packageOrClassToFindUsage);
+	private static void populateUsagesOfJavaPackagesOrClasses(Element usagesElement, List<String> packagesOrClassesListedInDirectives, Map<String, List<String>> usagesIndex, boolean packages) {
+		for (String packageOrClass : packagesOrClassesListedInDirectives) {
+			// Note: the element is created even when no module uses that package or class (this is also an information)
+			Element packageOrClassElement = XmlUtil.appendElementWithAttributeIfNotAlreadyExists(usagesElement, packages ? "java-package" : "java-class", "name", packageOrClass, true);
+			usagesIndex.getOrDefault(packageOrClass, List.of())
+					.forEach(moduleName -> XmlUtil.appendElementWithTextContent(packageOrClassElement, "module", moduleName));
+		}
 	}
 
 	// TODO: move these utility methods in XmlUtil
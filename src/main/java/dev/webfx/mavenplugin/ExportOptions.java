@@ -0,0 +1,42 @@
+package dev.webfx.mavenplugin;
+
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Options of ExportMojo.export(). The default values reproduce the original (non-incremental, sequential and
+ * in-memory) export.
+ */
+final class ExportOptions {
+
+    /**
+     * Path of the input fingerprints file used for incremental export (null = no incremental export)
+     */
+    String exportFingerprintsPath;
+
+    /**
+     * Inputs of the export other than the modules files (plugin version, options, parent poms), recorded with the
+     * fingerprints, so a change of them also invalidates the previous export
+     */
+    String exportInputs;
+
+    /**
+     * Path of the compact export snapshot to write at the same time as the webfx.xml artifact (null = not written)
+     */
+    String compactSnapshotPath;
+
+    /**
+     * Whether to stream the export snapshot to the artifact file (rather than formatting the whole document in memory)
+     */
+    boolean streaming;
+
+    /**
+     * Persistent cache of the packages exported by the third-party libraries (null = no cache)
+     */
+    ExportedPackagesCache exportedPackagesCache;
+
+    /**
+     * Maven session used to share the workspace with the other goals of the build (null = a new workspace is created)
+     */
+    MavenSession session;
+
+}
@@ -0,0 +1,111 @@
+package dev.webfx.mavenplugin;
+
+import dev.webfx.cli.util.xml.XmlUtil;
+import org.dom4j.Comment;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming writer of the webfx.xml artifact. Instead of building the whole export snapshot in memory and formatting
+ * it in one go, the document is written in 3 steps: 1) the head (everything before the export snapshot content),
+ * 2) the export snapshot elements one by one as they are produced, 3) the tail. Each part is still formatted by
+ * XmlUtil.formatXmlText() in the same context (nesting level and sibling order) as in the full document, so the
+ * output has the same layout, while the memory is bounded by the size of the largest element.
+ */
+final class ExportSnapshotWriter implements Closeable {
+
+    private static final String CONTENT_MARKER = "webfx-export-snapshot-content";
+    private static final String BEGIN_MARKER = "webfx-export-snapshot-element-begin";
+    private static final String END_MARKER = "webfx-export-snapshot-element-end";
+
+    private final Writer writer;
+    private final String exportSnapshotTag;
+    // Name and namespace declarations of the document root, reproduced in the context of each element
+    private QName rootQName;
+    private List<Namespace> rootNamespaces;
+    private String tail;
+
+    ExportSnapshotWriter(Path artifactPath, String exportSnapshotTag) throws IOException {
+        writer = Files.newBufferedWriter(artifactPath, StandardCharsets.UTF_8);
+        this.exportSnapshotTag = exportSnapshotTag;
+    }
+
+    /**
+     * Writes the document up to the export snapshot content. The export element must be empty at this stage and
+     * already appended to the document (it is left empty after this call).
+     */
+    void writeHead(Document document, Element exportElement) throws IOException {
+        Element documentRootElement = document.getRootElement();
+        rootQName = documentRootElement.getQName();
+        rootNamespaces = new ArrayList<>(documentRootElement.declaredNamespaces());
+        Comment contentMarker = DocumentHelper.createComment(CONTENT_MARKER);
+        XmlUtil.appendIndentNode(contentMarker, exportElement, true);
+        String text = XmlUtil.formatXmlText(document);
+        XmlUtil.removeChildren(exportElement);
+        String marker = "<!--" + CONTENT_MARKER + "-->";
+        int markerIndex = text.indexOf(marker);
+        if (markerIndex < 0)
+            throw new IllegalStateException("Couldn't locate the export snapshot content in the formatted document");
+        writer.write(text, 0, startOfLine(text, markerIndex));
+        tail = text.substring(endOfLine(text, markerIndex + marker.length()));
+    }
+
+    /**
+     * Writes an element of the export snapshot (a detached child <project/> element or the <usages/> element).
+     */
+    void writeElement(Element element) throws IOException {
+        // Formatting the element in a minimal document reproducing its context in the full document, including the
+        // namespaces declared on the root (otherwise they would be redeclared on the element, ex: xmlns:xsi)
+        Element rootElement = DocumentHelper.createElement(rootQName);
+        rootNamespaces.forEach(rootElement::add);
+        Document document = DocumentHelper.createDocument(rootElement);
+        Element exportElement = XmlUtil.createElement(exportSnapshotTag, rootElement);
+        XmlUtil.appendIndentNode(DocumentHelper.createComment(BEGIN_MARKER), exportElement, true);
+        XmlUtil.appendIndentNode(element, exportElement, true);
+        XmlUtil.appendIndentNode(DocumentHelper.createComment(END_MARKER), exportElement, true);
+        XmlUtil.appendIndentNode(exportElement, rootElement, true);
+        String text = XmlUtil.formatXmlText(document);
+        element.detach(); // so the caller can release it
+        int beginIndex = text.indexOf("<!--" + BEGIN_MARKER + "-->");
+        int endIndex = text.indexOf("<!--" + END_MARKER + "-->");
+        if (beginIndex < 0 || endIndex < beginIndex)
+            throw new IllegalStateException("Couldn't locate the element in its formatted context");
+        int from = endOfLine(text, beginIndex), to = startOfLine(text, endIndex);
+        writer.write(text, from, to - from);
+    }
+
+    void writeTail() throws IOException {
+        writer.write(tail);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    // Returns the start of the line at index if it contains only whitespaces before index, or index otherwise
+    private static int startOfLine(String text, int index) {
+        int lineStart = text.lastIndexOf('\n', index - 1) + 1;
+        return text.substring(lineStart, index).isBlank() ? lineStart : index;
+    }
+
+    // Returns the start of the next line if the line at index contains only whitespaces after index, or index otherwise
+    private static int endOfLine(String text, int index) {
+        int lineEnd = text.indexOf('\n', index);
+        if (lineEnd < 0)
+            lineEnd = text.length();
+        return text.substring(index, lineEnd).isBlank() ? Math.min(lineEnd + 1, text.length()) : index;
+    }
+}
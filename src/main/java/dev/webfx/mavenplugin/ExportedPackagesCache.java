@@ -0,0 +1,116 @@
+package dev.webfx.mavenplugin;
+
+import dev.webfx.cli.core.LibraryModule;
+import dev.webfx.cli.core.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cross-build cache of the packages exported by third-party libraries, keyed by groupId:artifactId:version.
+ * This cache is only used for released versions (never for snapshots), as their exported packages never change. Each
+ * entry is stored in its own file (groupId/artifactId/version.txt with one package per line), which is written in a
+ * temporary file first and then atomically moved, so concurrent builds sharing the same cache can't read partial
+ * entries. The last modified time of an entry is refreshed each time it is used, and entries not used for a while
+ * are evicted (this check is done at most once a day).
+ */
+final class ExportedPackagesCache {
+
+    private static final String LAST_EVICTION_FILE = ".last-eviction";
+    private static final Duration EVICTION_CHECK_PERIOD = Duration.ofDays(1);
+
+    private final Path cacheDirectory;
+    private final Duration maxUnusedDuration;
+
+    ExportedPackagesCache(Path cacheDirectory, Duration maxUnusedDuration) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxUnusedDuration = maxUnusedDuration;
+        evictUnusedEntriesIfDue();
+    }
+
+    /**
+     * Returns the cached exported packages of that library, or null if not in the cache.
+     */
+    List<String> get(LibraryModule libraryModule) {
+        Path entryPath = getEntryPath(libraryModule);
+        try {
+            List<String> exportedPackages = Files.readAllLines(entryPath, StandardCharsets.UTF_8);
+            try {
+                touch(entryPath); // marking the entry as recently used (for the eviction)
+            } catch (IOException ignored) { // Possibly evicted in the meantime by another build, which is not a problem
+            }
+            return exportedPackages;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Logger.log("WARNING: Couldn't read " + entryPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void put(LibraryModule libraryModule, List<String> exportedPackages) {
+        Path entryPath = getEntryPath(libraryModule);
+        try {
+            Files.createDirectories(entryPath.getParent());
+            Path tempPath = Files.createTempFile(entryPath.getParent(), entryPath.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tempPath, exportedPackages, StandardCharsets.UTF_8);
+                Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) { // Not blocking, as it's just a cache
+            Logger.log("WARNING: Couldn't write " + entryPath + ": " + e.getMessage());
+        }
+    }
+
+    private Path getEntryPath(LibraryModule libraryModule) {
+        return cacheDirectory
+            .resolve(libraryModule.getGroupId())
+            .resolve(libraryModule.getArtifactId())
+            .resolve(libraryModule.getVersion() + ".txt");
+    }
+
+    private void evictUnusedEntriesIfDue() {
+        Path lastEvictionPath = cacheDirectory.resolve(LAST_EVICTION_FILE);
+        Instant now = Instant.now();
+        try {
+            if (Files.exists(lastEvictionPath) && Files.getLastModifiedTime(lastEvictionPath).toInstant().plus(EVICTION_CHECK_PERIOD).isAfter(now))
+                return;
+            Files.createDirectories(cacheDirectory);
+            touch(Files.exists(lastEvictionPath) ? lastEvictionPath : Files.createFile(lastEvictionPath));
+            Instant oldestAllowed = now.minus(maxUnusedDuration);
+            try (Stream<Path> stream = Files.walk(cacheDirectory)) {
+                stream.filter(p -> p.getFileName().toString().endsWith(".txt"))
+                    .filter(p -> isLastModifiedBefore(p, oldestAllowed))
+                    .forEach(p -> {
+                        try {
+                            Files.deleteIfExists(p);
+                        } catch (IOException ignored) { // Possibly in use by another build, will be evicted next time
+                        }
+                    });
+            }
+        } catch (FileAlreadyExistsException e) { // Another build just started the eviction
+        } catch (IOException e) {
+            Logger.log("WARNING: Couldn't evict unused entries from " + cacheDirectory + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isLastModifiedBefore(Path path, Instant instant) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(instant);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+    }
+}
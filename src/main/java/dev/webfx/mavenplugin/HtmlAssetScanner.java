@@ -0,0 +1,277 @@
+package dev.webfx.mavenplugin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass scanner of index.html (and of the local stylesheets it references, recursively) used by the pwa goal to
+ * discover the assets of the page: scripts, stylesheets, preloaded or module-preloaded resources, icons and images of the
+ * page, and the url() and @import dependencies of the stylesheets (including the inline styles). Only the scripts,
+ * stylesheets and preloaded resources are considered critical (needed to render the page), together with the
+ * stylesheets they @import (directly or through the inline styles), as these imports also block the rendering. The
+ * url() dependencies of the stylesheets (fonts, images, etc...) are not critical. The HTML tokenizer
+ * skips the comments and the script contents, accepts the attributes in any order, quoted or not, and also locates the
+ * first </head> end tag where the pwa goal injects its tags.
+ */
+final class HtmlAssetScanner {
+
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("script", "style");
+    private static final Set<String> LINK_RELS = Set.of("stylesheet", "preload", "modulepreload", "icon", "shortcut", "apple-touch-icon", "mask-icon");
+    private static final Set<String> CRITICAL_LINK_RELS = Set.of("stylesheet", "preload", "modulepreload");
+    private static final Pattern CSS_COMMENT_PATTERN = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    // @import url(...) or @import "...", and the other url(...) references
+    private static final Pattern CSS_REFERENCE_PATTERN = Pattern.compile(
+        "@import\\s+(?:url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)|(['\"])([^'\"]+)\\3)|url\\(\\s*(['\"]?)([^'\")]+)\\5\\s*\\)",
+        Pattern.CASE_INSENSITIVE);
+
+    interface TagHandler {
+        /**
+         * Called for each start or end tag (attributes and raw text are empty for the end tags), with the offsets of the
+         * tag in the html (tagStart = index of '<', tagEnd = index after '>', which is also the start of the raw text).
+         * Returns false to stop the scan.
+         */
+        boolean onTag(String name, boolean endTag, Map<String, String> attributes, String rawText, int tagStart, int tagEnd);
+    }
+
+    private final Path rootPath;
+    private final Set<String> criticalAssets = new LinkedHashSet<>();
+    private final Set<String> directAssets = new LinkedHashSet<>();
+    private final Set<String> allAssets = new LinkedHashSet<>();
+    private final Set<String> scannedStylesheets = new HashSet<>();
+    // Stylesheets scanned as critical (a stylesheet first scanned as not critical is scanned again if it turns out to
+    // be critical, so its imports become critical too)
+    private final Set<String> criticalScannedStylesheets = new HashSet<>();
+
+    private HtmlAssetScanner(Path rootPath) {
+        this.rootPath = rootPath;
+    }
+
+    /**
+     * Returns all the assets the scanned html file depends on, directly or through its stylesheets, as paths relative
+     * to the document root (ex: "/path/to/script.js"), in order of discovery.
+     */
+    Set<String> getAllAssets() {
+        return allAssets;
+    }
+
+    /**
+     * Returns the assets directly referenced by the script tags, and the stylesheet, preload or modulepreload link tags
+     * of the scanned html file, together with the stylesheets imported by these stylesheets or by the inline styles.
+     */
+    Set<String> getCriticalAssets() {
+        return criticalAssets;
+    }
+
+    /**
+     * Returns only the assets directly referenced by the tags of the scanned html file (not through its stylesheets).
+     */
+    Set<String> getDirectAssets() {
+        return directAssets;
+    }
+
+    static HtmlAssetScanner scan(Path htmlPath) throws IOException {
+        HtmlAssetScanner scanner = new HtmlAssetScanner(htmlPath.getParent());
+        String html = Files.readString(htmlPath, StandardCharsets.UTF_8);
+        String htmlAssetPath = "/" + htmlPath.getFileName();
+        tokenize(html, (name, endTag, attributes, rawText, tagStart, tagEnd) -> {
+            if (!endTag)
+                scanner.onStartTag(name, attributes, rawText, htmlAssetPath);
+            return true;
+        });
+        return scanner;
+    }
+
+    private void onStartTag(String name, Map<String, String> attributes, String rawText, String htmlAssetPath) {
+        String style = attributes.get("style");
+        if (style != null)
+            scanCss(style, htmlAssetPath, false);
+        switch (name) {
+            case "script":
+            case "img":
+                addDirectReference(attributes.get("src"), htmlAssetPath, name.equals("script"));
+                break;
+            case "link":
+                List<String> rels = Arrays.asList(attributes.getOrDefault("rel", "").toLowerCase(Locale.ROOT).split("\\s+"));
+                if (rels.stream().anyMatch(LINK_RELS::contains))
+                    addDirectReference(attributes.get("href"), htmlAssetPath, rels.stream().anyMatch(CRITICAL_LINK_RELS::contains));
+                break;
+            case "style":
+                scanCss(rawText, htmlAssetPath, true);
+                break;
+        }
+    }
+
+    private void addDirectReference(String reference, String baseAssetPath, boolean critical) {
+        String assetPath = resolveReference(reference, baseAssetPath);
+        if (assetPath != null) {
+            directAssets.add(assetPath);
+            addAsset(assetPath, critical);
+        }
+    }
+
+    private void addAsset(String assetPath, boolean critical) {
+        allAssets.add(assetPath);
+        if (critical)
+            criticalAssets.add(assetPath);
+        // Following the dependencies of the local stylesheets
+        boolean scan = critical ? scannedStylesheets.add(assetPath) | criticalScannedStylesheets.add(assetPath) : scannedStylesheets.add(assetPath);
+        if (scan && assetPath.toLowerCase(Locale.ROOT).endsWith(".css")) {
+            Path cssPath = rootPath.resolve(assetPath.substring(1));
+            if (Files.isRegularFile(cssPath))
+                try {
+                    scanCss(Files.readString(cssPath, StandardCharsets.UTF_8), assetPath, critical);
+                } catch (IOException e) {
+                    // Ignoring unreadable stylesheets (their dependencies are just not detected)
+                }
+        }
+    }
+
+    // The stylesheets imported by a critical css are also critical, but not its other dependencies
+    private void scanCss(String css, String cssAssetPath, boolean critical) {
+        Matcher matcher = CSS_REFERENCE_PATTERN.matcher(CSS_COMMENT_PATTERN.matcher(css).replaceAll(""));
+        while (matcher.find()) {
+            boolean isImport = matcher.group(6) == null;
+            String assetPath = resolveReference(matcher.group(2) != null ? matcher.group(2) : isImport ? matcher.group(4) : matcher.group(6), cssAssetPath);
+            if (assetPath != null)
+                addAsset(assetPath, critical && isImport);
+        }
+    }
+
+    /**
+     * Resolves that reference relatively to the base asset, and returns it as a path relative to the document root, or
+     * null if it's not a local asset (external URL, data URI, etc.).
+     */
+    static String resolveReference(String reference, String baseAssetPath) {
+        if (reference == null)
+            return null;
+        reference = reference.trim();
+        int queryIndex = reference.indexOf('?'), fragmentIndex = reference.indexOf('#');
+        int endIndex = queryIndex >= 0 && (fragmentIndex < 0 || queryIndex < fragmentIndex) ? queryIndex : fragmentIndex;
+        if (endIndex >= 0)
+            reference = reference.substring(0, endIndex);
+        // Ignoring empty references, protocol-relative and absolute URLs (http:, https:, data:, blob:, etc...)
+        if (reference.isEmpty() || reference.startsWith("//") || reference.matches("^[a-zA-Z][a-zA-Z0-9+.-]*:.*"))
+            return null;
+        try {
+            String path = URI.create("file://" + baseAssetPath).resolve(reference.replace(" ", "%20")).getPath();
+            return path == null || path.isEmpty() || path.endsWith("/") || path.contains("/../") ? null : path;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Inserts that snippet before the first </head> end tag of the html (or before the first </body> or </html> end tag
+     * if there is no head, or at the end otherwise). Unlike a string replacement, the end tags appearing in comments or
+     * scripts are ignored, and only the first occurrence is considered.
+     */
+    static String insertInHead(String html, String snippet) {
+        int[] endTagIndexes = { -1, -1, -1 }; // </head>, </body>, </html>
+        List<String> endTagNames = List.of("head", "body", "html");
+        tokenize(html, (name, endTag, attributes, rawText, tagStart, tagEnd) -> {
+            int i = endTagNames.indexOf(name);
+            if (endTag && i >= 0 && endTagIndexes[i] < 0)
+                endTagIndexes[i] = tagStart;
+            return endTagIndexes[0] < 0;
+        });
+        if (endTagIndexes[0] >= 0)
+            return html.substring(0, endTagIndexes[0]) + snippet + "\n  " + html.substring(endTagIndexes[0]);
+        for (int i = 1; i < endTagIndexes.length; i++)
+            if (endTagIndexes[i] >= 0)
+                return html.substring(0, endTagIndexes[i]) + snippet + "\n" + html.substring(endTagIndexes[i]);
+        return html + snippet;
+    }
+
+    /**
+     * Tokenizes the html and calls the handler for each tag. The tag and attribute names are lower-cased.
+     */
+    static void tokenize(String html, TagHandler handler) {
+        int n = html.length(), i = 0;
+        while (i < n) {
+            int lt = html.indexOf('<', i);
+            if (lt < 0 || lt + 1 >= n)
+                return;
+            char c = html.charAt(lt + 1);
+            if (html.startsWith("<!--", lt)) { // Comment
+                int end = html.indexOf("-->", lt + 4);
+                i = end < 0 ? n : end + 3;
+            } else if (c == '!' || c == '?') { // Doctype or processing instruction
+                int end = html.indexOf('>', lt);
+                i = end < 0 ? n : end + 1;
+            } else if (c == '/' || Character.isLetter(c)) {
+                boolean endTag = c == '/';
+                int nameStart = endTag ? lt + 2 : lt + 1, nameEnd = nameStart;
+                while (nameEnd < n && !Character.isWhitespace(html.charAt(nameEnd)) && html.charAt(nameEnd) != '>' && html.charAt(nameEnd) != '/')
+                    nameEnd++;
+                String name = html.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+                Map<String, String> attributes = endTag ? Map.of() : new HashMap<>();
+                i = parseAttributes(html, nameEnd, attributes);
+                String rawText = "";
+                if (!endTag && RAW_TEXT_TAGS.contains(name)) { // Skipping the script and style contents
+                    int closeIndex = indexOfIgnoreCase(html, "</" + name, i);
+                    rawText = html.substring(i, closeIndex < 0 ? n : closeIndex);
+                    if (!handler.onTag(name, false, attributes, rawText, lt, i))
+                        return;
+                    i = closeIndex < 0 ? n : closeIndex;
+                    continue;
+                }
+                if (!handler.onTag(name, endTag, attributes, rawText, lt, i))
+                    return;
+            } else // Just a '<' character in the text
+                i = lt + 1;
+        }
+    }
+
+    // Parses the attributes until the end of the tag and returns the index after the tag
+    private static int parseAttributes(String html, int i, Map<String, String> attributes) {
+        int n = html.length();
+        while (i < n) {
+            char c = html.charAt(i);
+            if (c == '>')
+                return i + 1;
+            if (Character.isWhitespace(c) || c == '/') {
+                i++;
+                continue;
+            }
+            int nameStart = i;
+            while (i < n && !Character.isWhitespace(html.charAt(i)) && "=>/".indexOf(html.charAt(i)) < 0)
+                i++;
+            String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+            while (i < n && Character.isWhitespace(html.charAt(i)))
+                i++;
+            String value = "";
+            if (i < n && html.charAt(i) == '=') {
+                i++;
+                while (i < n && Character.isWhitespace(html.charAt(i)))
+                    i++;
+                if (i < n && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    int end = html.indexOf(html.charAt(i), i + 1);
+                    if (end < 0)
+                        end = n;
+                    value = html.substring(i + 1, end);
+                    i = Math.min(end + 1, n);
+                } else {
+                    int valueStart = i;
+                    while (i < n && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>')
+                        i++;
+                    value = html.substring(valueStart, i);
+                }
+            }
+            attributes.putIfAbsent(name, value);
+        }
+        return n;
+    }
+
+    private static int indexOfIgnoreCase(String s, String searched, int fromIndex) {
+        for (int i = fromIndex; i <= s.length() - searched.length(); i++)
+            if (s.regionMatches(true, i, searched, 0, searched.length()))
+                return i;
+        return -1;
+    }
+}
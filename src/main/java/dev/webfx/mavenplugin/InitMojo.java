@@ -3,6 +3,7 @@ package dev.webfx.mavenplugin;
 import dev.webfx.cli.commands.CommandWorkspace;
 import dev.webfx.cli.commands.Init;
 import dev.webfx.cli.core.Logger;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
@@ -36,6 +37,9 @@ public final class InitMojo extends AbstractMojo {
 	@Component
 	private Prompter prompter;
 
+	@Parameter(defaultValue = "${session}", required = true, readonly = true)
+	private MavenSession session;
+
 	/**
 	 * Called when this goal is run
 	 */
@@ -53,20 +57,28 @@ public final class InitMojo extends AbstractMojo {
 
 			LoggerUtil.configureWebFXLoggerForMaven(getLog());
 
-			int result = init(projectDirectory, artifact);
+			int result = init(projectDirectory, artifact, session);
 
 			if (failOnError && result != 0) {
 				throw new MojoFailureException("Failed to complete init, result=" + result);
 			}
 		} catch (PrompterException e) {
 			throw new RuntimeException(e);
+		} finally {
+			BuildTracer.writeTraceAndLogSummary("init", session, getLog());
 		}
 	}
 
 	public static int init(String projectDirectory, String artifact) {
+		return init(projectDirectory, artifact, null);
+	}
+
+	static int init(String projectDirectory, String artifact, MavenSession session) {
 		try {
-			CommandWorkspace workspace = new CommandWorkspace(projectDirectory);
-			Init.execute(artifact, workspace);
+			CommandWorkspace workspace = SessionWorkspaces.getOrCreateWorkspace(session, projectDirectory);
+			try (BuildTracer.Span ignored = BuildTracer.span("init")) {
+				Init.execute(artifact, workspace);
+			}
 			return 0;
 		} catch (Exception e) {
 			Logger.log("ERROR: " + e.getMessage());
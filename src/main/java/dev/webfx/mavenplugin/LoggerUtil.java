@@ -3,14 +3,20 @@ package dev.webfx.mavenplugin;
 import dev.webfx.cli.core.Logger;
 import org.apache.maven.plugin.logging.Log;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author Bruno Salmon
  */
 final class LoggerUtil {
 
+    private static final AtomicInteger ERROR_COUNT = new AtomicInteger();
+
     static void configureWebFXLoggerForMaven(Log mavenLog) {
         Logger.setLogConsumer(msg -> {
             String text = msg.toString();
+            if (msg instanceof Throwable || text.startsWith("ERROR: "))
+                ERROR_COUNT.incrementAndGet();
             if (text.startsWith("WARNING: "))
                 mavenLog.warn(text.substring(9));
             else if (text.startsWith("VERBOSE: "))
@@ -22,4 +28,12 @@ final class LoggerUtil {
         });
     }
 
+    /**
+     * Returns the number of errors reported so far by the WebFX CLI (once configured for Maven), so a caller can check
+     * whether an operation reported errors by comparing this number before and after it.
+     */
+    static int getErrorCount() {
+        return ERROR_COUNT.get();
+    }
+
 }
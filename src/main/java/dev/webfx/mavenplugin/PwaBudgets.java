@@ -0,0 +1,140 @@
+package dev.webfx.mavenplugin;
+
+import dev.webfx.cli.util.textfile.TextFileReaderWriter;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Performance budgets of the PWA, checked against the assets recorded while building the asset manifest. The sizes
+ * counted for the CRITICAL and precache budgets are the gzip sizes (the transfer sizes of the install), while the
+ * single-asset budget applies to the raw sizes (the sizes stored in the cache and parsed by the browser). All the GWT
+ * permutations are counted in the totals, as this is what the service worker downloads in the worst case (it precaches
+ * all of them when none matches the user agent of the client).
+ *
+ * The per-strategy totals, the largest assets and the exceeded budgets are also written in a JSON report, so the sizes
+ * can be tracked from one build to another.
+ */
+final class PwaBudgets {
+
+    private static final int LARGEST_ASSETS_COUNT = 10;
+
+    private final long maxCriticalGzipBytes;
+    private final long maxPrecacheBytes;
+    private final long maxAssetBytes;
+    private final List<Asset> assets = new ArrayList<>();
+
+    private static final class Asset {
+        final String path;
+        final String strategy;
+        final long size;
+        final long gzipSize;
+
+        Asset(String path, String strategy, long size, long gzipSize) {
+            this.path = path;
+            this.strategy = strategy;
+            this.size = size;
+            this.gzipSize = gzipSize;
+        }
+    }
+
+    private static final class StrategyTotal {
+        int count;
+        long size;
+        long gzipSize;
+
+        void add(Asset asset) {
+            count++;
+            size += asset.size;
+            gzipSize += asset.gzipSize;
+        }
+    }
+
+    /**
+     * Budgets in bytes (0 or less = no budget).
+     */
+    PwaBudgets(long maxCriticalGzipBytes, long maxPrecacheBytes, long maxAssetBytes) {
+        this.maxCriticalGzipBytes = maxCriticalGzipBytes;
+        this.maxPrecacheBytes = maxPrecacheBytes;
+        this.maxAssetBytes = maxAssetBytes;
+    }
+
+    /**
+     * Records a precached asset (gzipSize = -1 if not computed, the raw size is then counted instead).
+     */
+    void recordAsset(String path, String strategy, long size, long gzipSize) {
+        assets.add(new Asset(path, strategy, size, gzipSize < 0 ? size : gzipSize));
+    }
+
+    /**
+     * Logs the per-strategy totals and the largest assets, writes the JSON report, and returns the exceeded budgets
+     * (empty list if all budgets are met).
+     */
+    List<String> checkAndReport(Path reportPath, Log log) throws IOException {
+        Map<String, StrategyTotal> totals = new TreeMap<>();
+        for (Asset asset : assets)
+            totals.computeIfAbsent(asset.strategy, k -> new StrategyTotal()).add(asset);
+        long precacheGzipSize = totals.values().stream().mapToLong(t -> t.gzipSize).sum();
+        StrategyTotal criticalTotal = totals.getOrDefault("CRITICAL", new StrategyTotal());
+        List<Asset> assetsBySize = new ArrayList<>(assets);
+        assetsBySize.sort(Comparator.comparingLong((Asset a) -> a.size).reversed().thenComparing(a -> a.path));
+        List<Asset> largestAssets = assetsBySize.subList(0, Math.min(LARGEST_ASSETS_COUNT, assetsBySize.size()));
+
+        List<String> violations = new ArrayList<>();
+        if (maxCriticalGzipBytes > 0 && criticalTotal.gzipSize > maxCriticalGzipBytes)
+            violations.add("CRITICAL assets are " + criticalTotal.gzipSize + " bytes gzipped (budget: " + maxCriticalGzipBytes + ")");
+        if (maxPrecacheBytes > 0 && precacheGzipSize > maxPrecacheBytes)
+            violations.add("Precached assets are " + precacheGzipSize + " bytes gzipped (budget: " + maxPrecacheBytes + ")");
+        if (maxAssetBytes > 0)
+            for (Asset asset : assetsBySize)
+                if (asset.size > maxAssetBytes)
+                    violations.add(asset.path + " is " + asset.size + " bytes (budget: " + maxAssetBytes + ")");
+
+        totals.forEach((strategy, total) -> log.info(strategy + " assets: " + total.count + " files, " + total.size + " bytes (" + total.gzipSize + " bytes gzipped)"));
+        log.info("Precached assets: " + precacheGzipSize + " bytes gzipped");
+        if (!largestAssets.isEmpty()) {
+            log.info("Largest precached assets:");
+            for (Asset asset : largestAssets.subList(0, Math.min(5, largestAssets.size())))
+                log.info("  " + asset.path + " (" + asset.strategy + "): " + asset.size + " bytes (" + asset.gzipSize + " bytes gzipped)");
+        }
+
+        Files.createDirectories(reportPath.getParent());
+        TextFileReaderWriter.writeTextFileIfNewOrModified(toJsonReport(totals, precacheGzipSize, largestAssets, violations), reportPath);
+        return violations;
+    }
+
+    private String toJsonReport(Map<String, StrategyTotal> totals, long precacheGzipSize, List<Asset> largestAssets, List<String> violations) {
+        StringBuilder sb = new StringBuilder("{\n  \"budgets\": {");
+        sb.append("\"maxCriticalGzipBytes\": ").append(Math.max(0, maxCriticalGzipBytes))
+            .append(", \"maxPrecacheBytes\": ").append(Math.max(0, maxPrecacheBytes))
+            .append(", \"maxAssetBytes\": ").append(Math.max(0, maxAssetBytes)).append("},\n  \"strategies\": {");
+        boolean first = true;
+        for (Map.Entry<String, StrategyTotal> e : totals.entrySet()) {
+            sb.append(first ? "\n    " : ",\n    ").append('"').append(PwaMojo.escapeJson(e.getKey())).append("\": {")
+                .append("\"count\": ").append(e.getValue().count)
+                .append(", \"size\": ").append(e.getValue().size)
+                .append(", \"gzipSize\": ").append(e.getValue().gzipSize).append('}');
+            first = false;
+        }
+        sb.append(first ? "},\n" : "\n  },\n");
+        sb.append("  \"precacheGzipSize\": ").append(precacheGzipSize).append(",\n  \"largestAssets\": [");
+        first = true;
+        for (Asset asset : largestAssets) {
+            sb.append(first ? "\n    " : ",\n    ").append("{\"path\": \"").append(PwaMojo.escapeJson(asset.path))
+                .append("\", \"strategy\": \"").append(PwaMojo.escapeJson(asset.strategy))
+                .append("\", \"size\": ").append(asset.size)
+                .append(", \"gzipSize\": ").append(asset.gzipSize).append('}');
+            first = false;
+        }
+        sb.append(first ? "],\n" : "\n  ],\n").append("  \"violations\": [");
+        first = true;
+        for (String violation : violations) {
+            sb.append(first ? "\n    " : ",\n    ").append('"').append(PwaMojo.escapeJson(violation)).append('"');
+            first = false;
+        }
+        return sb.append(first ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+}
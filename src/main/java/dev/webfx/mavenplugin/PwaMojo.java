@@ -5,8 +5,10 @@ import dev.webfx.cli.core.DevProjectModule;
 import dev.webfx.cli.util.textfile.TextFileReaderWriter;
 import dev.webfx.cli.util.xml.XmlUtil;
 import dev.webfx.platform.meta.Meta;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
@@ -14,16 +16,43 @@ import org.apache.maven.project.MavenProject;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Mojo(name = "pwa", aggregator = true) // aggregator = true because that goal doesn't need to be run on children
 public final class PwaMojo extends AbstractMojo {
 
+    // Direct buffer used by each thread to stream the assets when digesting them (so the heap use stays bounded)
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(64 * 1024));
+    // Output buffer of the deflater used by each thread to compute the gzip sizes (the compressed bytes are discarded)
+    private static final ThreadLocal<byte[]> DEFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+    // GZIP header (10 bytes) + trailer (CRC32 + size = 8 bytes) around the deflate data
+    private static final int GZIP_OVERHEAD = 18;
+    // Extensions of the assets worth precompressing (the other formats are already compressed)
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+        "js", "mjs", "css", "html", "htm", "json", "webmanifest", "svg", "xml", "wasm", "ttf", "otf", "eot", "ico");
+    // Prefix of the externalized asset manifest file name (followed by its content hash and .json)
+    private static final String EXTERNAL_ASSET_MANIFEST_PREFIX = "pwa-asset-manifest.";
+    // Small file written next to index.html, checked by the service worker with conditional requests to detect new versions
+    static final String VERSION_FILE_NAME = "pwa-version.json";
+    // Top-level key of the service worker settings in the asset manifest (the other keys are the asset paths)
+    private static final String SETTINGS_KEY = "settings";
+    // Strategies applied by the service worker at runtime (the other assets are precached or just served from the network)
+    private static final Set<String> RUNTIME_STRATEGIES = Set.of("LAZY", "STALE_WHILE_REVALIDATE", "NETWORK_FIRST", "NETWORK_ONLY");
+
     /**
      * projectDirectory from the maven pom.xml file
      */
@@ -33,17 +62,115 @@ public final class PwaMojo extends AbstractMojo {
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     private MavenProject project;
 
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
     /**
      * Stop executing build on error or ignore errors
      */
     @Parameter(property = "failOnError", defaultValue = "true")
     private boolean failOnError;
 
+    /**
+     * Ignore the asset manifest cache (kept in target/webfx-cache/) and read all the assets again
+     */
+    @Parameter(property = "fullAssetRebuild", defaultValue = "false")
+    private boolean fullAssetRebuild;
+
+    /**
+     * Write a precompressed .gz sibling next to each compressible asset, so static servers can serve it directly
+     */
+    @Parameter(property = "precompressAssets", defaultValue = "false")
+    private boolean precompressAssets;
+
+    /**
+     * Write the asset manifest in a separate content-hashed pwa-asset-manifest.{hash}.json file (index.html then only
+     * points to it) instead of inlining it in index.html
+     */
+    @Parameter(property = "externalAssetManifest", defaultValue = "false")
+    private boolean externalAssetManifest;
+
+    /**
+     * GWT output directory (or archive such as the war) of the previous build, used to generate binary delta patches
+     * of the large changed assets, so returning users download only the patches
+     */
+    @Parameter(property = "previousBuildOutput")
+    private String previousBuildOutput;
+
+    /**
+     * Inject <link rel="preload"> hints in index.html for the CRITICAL assets not directly referenced by index.html (ex:
+     * a font of the stylesheets declared CRITICAL in webfx.xml), so the browser starts fetching them before the service
+     * worker is involved
+     */
+    @Parameter(property = "injectPreloadHints", defaultValue = "false")
+    private boolean injectPreloadHints;
+
+    /**
+     * Copy the assets referenced by index.html and its stylesheets (except the GWT files) under content-hashed names,
+     * rewrite their references, and write the caching rules in a _headers file (immutable for the hashed names, no-cache
+     * for the entry points)
+     */
+    @Parameter(property = "contentAddressedAssets", defaultValue = "false")
+    private boolean contentAddressedAssets;
+
+    /**
+     * Budget of the CRITICAL assets in gzipped bytes (0 = no budget)
+     */
+    @Parameter(property = "maxCriticalGzipBytes", defaultValue = "0")
+    private long maxCriticalGzipBytes;
+
+    /**
+     * Budget of all the precached assets (CRITICAL and BACKGROUND) in gzipped bytes (0 = no budget)
+     */
+    @Parameter(property = "maxPrecacheBytes", defaultValue = "0")
+    private long maxPrecacheBytes;
+
+    /**
+     * Budget of each precached asset in raw bytes (0 = no budget)
+     */
+    @Parameter(property = "maxAssetBytes", defaultValue = "0")
+    private long maxAssetBytes;
+
+    /**
+     * Maximum number of concurrent downloads of the service worker prefetch
+     */
+    @Parameter(property = "prefetchConcurrency", defaultValue = "6")
+    private int prefetchConcurrency;
+
+    /**
+     * Maximum number of concurrent downloads of the service worker prefetch on slow connections (2g, 3g) or when the
+     * user asked to save data
+     */
+    @Parameter(property = "prefetchSlowConcurrency", defaultValue = "2")
+    private int prefetchSlowConcurrency;
+
+    /**
+     * Prefetch the BACKGROUND assets even when the user asked to save data (otherwise only the CRITICAL assets are
+     * prefetched, the other ones being cached when the application requests them)
+     */
+    @Parameter(property = "prefetchBackgroundOnSaveData", defaultValue = "false")
+    private boolean prefetchBackgroundOnSaveData;
+
+    /**
+     * Quota in bytes of the service worker runtime cache (assets matching the LAZY, STALE_WHILE_REVALIDATE and
+     * NETWORK_FIRST rules), the least recently used assets being evicted beyond it (50 MB by default)
+     */
+    @Parameter(property = "runtimeCacheMaxBytes", defaultValue = "52428800")
+    private long runtimeCacheMaxBytes;
+
     /**
      * Called when this goal is run
      */
     @Override
     public void execute() throws MojoFailureException {
+        try {
+            executePwa();
+        } finally {
+            BuildTracer.writeTraceAndLogSummary("pwa", session, getLog());
+        }
+    }
+
+    private void executePwa() throws MojoFailureException {
 
         // Redirecting CLI logger to Maven logger
         LoggerUtil.configureWebFXLoggerForMaven(getLog());
@@ -77,8 +204,9 @@ public final class PwaMojo extends AbstractMojo {
 
                 // Reading webfx.xml to find essential assets and their strategies
                 Map<String, String> assetStrategies = new HashMap<>();
+                Map<String, String> runtimeCachingRules = new LinkedHashMap<>(); // path regex -> runtime strategy
                 try {
-                    CommandWorkspace workspace = new CommandWorkspace(projectDirectory);
+                    CommandWorkspace workspace = SessionWorkspaces.getOrCreateWorkspace(session, projectDirectory);
                     DevProjectModule projectModule = workspace.getWorkingDevProjectModule();
                     if (projectModule != null) {
                         // dev.webfx.cli.core.ProjectModule returns a dom4j Document
@@ -93,7 +221,25 @@ public final class PwaMojo extends AbstractMojo {
                                 if (strategy == null || strategy.isEmpty()) {
                                     strategy = "BACKGROUND"; // Default to background prefetch
                                 }
-                                assetStrategies.put(path, strategy.toUpperCase());
+                                strategy = strategy.toUpperCase();
+                                // Essential assets with a runtime strategy are not precached, but cached on use
+                                if (RUNTIME_STRATEGIES.contains(strategy))
+                                    runtimeCachingRules.put(toRuntimeCachingRegex(path), strategy);
+                                else
+                                    assetStrategies.put(path, strategy);
+                            }
+                            List<org.dom4j.Node> ruleNodes = XmlUtil.lookupNodeList(webfxXmlDoc,
+                                "/project/pwa/runtime-caching/rule");
+                            for (org.dom4j.Node node : ruleNodes) {
+                                String pattern = node.valueOf("@pattern");
+                                if (pattern == null || pattern.isEmpty())
+                                    pattern = node.getText().trim();
+                                String strategy = node.valueOf("@strategy");
+                                strategy = strategy == null || strategy.isEmpty() ? "LAZY" : strategy.toUpperCase();
+                                if (pattern.isEmpty() || !RUNTIME_STRATEGIES.contains(strategy))
+                                    getLog().warn("Ignoring invalid runtime caching rule in webfx.xml: pattern = " + pattern + ", strategy = " + strategy);
+                                else
+                                    runtimeCachingRules.putIfAbsent(toRuntimeCachingRegex(pattern), strategy);
                             }
                         }
                     }
@@ -101,71 +247,79 @@ public final class PwaMojo extends AbstractMojo {
                     getLog().warn("Failed to read webfx.xml for PWA configuration: " + e.getMessage());
                 }
 
-                // Auto-detect assets referenced in index.html and mark them as CRITICAL
                 Path indexHtmlPath = gwtAppPath.resolve("index.html");
-                if (Files.exists(indexHtmlPath)) {
-                    try {
-                        Set<String> referencedAssets = extractReferencedAssets(indexHtmlPath);
-                        for (String asset : referencedAssets) {
-                            // Only mark as CRITICAL if not already defined in webfx.xml
-                            if (!assetStrategies.containsKey(asset)) {
-                                assetStrategies.put(asset, "CRITICAL");
-                                getLog().debug("Auto-detected critical asset from index.html: " + asset);
+                if (contentAddressedAssets && Files.exists(indexHtmlPath)) {
+                    try (BuildTracer.Span ignored = BuildTracer.span("content addressing")) {
+                        Path generatedNamesPath = Path.of(projectDirectory).resolve("target/webfx-cache/content-addressed-assets.properties");
+                        // The hashed copies inherit the strategies defined in webfx.xml for the original assets (including
+                        // the runtime strategies, whose rules match the original paths)
+                        ContentAddressedAssets.apply(gwtAppPath, generatedNamesPath, getLog()).forEach((originalPath, hashedPath) -> {
+                            String strategy = assetStrategies.get(originalPath);
+                            if (strategy != null)
+                                assetStrategies.putIfAbsent(hashedPath, strategy);
+                            else {
+                                String runtimeStrategy = getRuntimeStrategy(originalPath, runtimeCachingRules);
+                                if (runtimeStrategy != null)
+                                    runtimeCachingRules.putIfAbsent(globToRegex(hashedPath), runtimeStrategy);
                             }
-                        }
-                        getLog().info("Auto-detected " + referencedAssets.size() + " critical assets from index.html");
-                    } catch (Exception e) {
-                        getLog().warn("Failed to parse index.html for asset references: " + e.getMessage());
+                        });
                     }
                 }
 
-                // Build asset manifest by scanning gwtAppPath for .html, .js, .css
-                Map<Path, String> manifestMap = new LinkedHashMap<>();
-                if (Files.isDirectory(gwtAppPath)) {
-                    try (Stream<Path> stream = Files.walk(gwtAppPath)) {
-                        stream.filter(Files::isRegularFile)
-                            .filter(PwaMojo::includesInCacheAsset)
-                            .sorted()
-                            .forEach(p -> {
-                                try {
-                                    Path r = gwtAppPath.relativize(p);
-                                    String pathStr = r.toString().replace('\\', '/');
-                                    if (!pathStr.equals("index.html")) {
-                                        String hash = sha256Hex(p);
-                                        manifestMap.put(r, hash);
-                                    }
-                                } catch (Exception e) {
-                                    // If hashing fails, we log and skip this file
-                                    getLog().warn("Failed to hash asset: " + p + " - " + e.getMessage());
-                                }
-                            });
+                // Auto-detect assets referenced in index.html and mark its scripts, stylesheets and preloaded resources as
+                // CRITICAL, and its other assets (images, icons, stylesheets dependencies) as BACKGROUND
+                HtmlAssetScanner indexHtmlScan = null;
+                if (Files.exists(indexHtmlPath)) {
+                    try (BuildTracer.Span ignored = BuildTracer.span("index.html parsing")) {
+                        indexHtmlScan = HtmlAssetScanner.scan(indexHtmlPath);
+                        int criticalCount = addAutoDetectedAssetStrategies(indexHtmlScan.getAllAssets(), indexHtmlScan.getCriticalAssets(),
+                            assetStrategies, runtimeCachingRules, getLog());
+                        getLog().info("Auto-detected " + criticalCount + " critical assets from index.html");
+                    } catch (Exception e) {
+                        getLog().warn("Failed to parse index.html for asset references: " + e.getMessage());
                     }
-                } else {
-                    getLog().warn("gwtAppPath not found: " + gwtAppPath);
                 }
 
-                String assetManifestJson = toJsonAssetObject(manifestMap, assetStrategies, gwtAppPath, getLog());
+                AssetManifestOptions options = new AssetManifestOptions();
+                options.cache = new AssetManifestCache(
+                    Path.of(projectDirectory).resolve("target/webfx-cache/pwa-asset-manifest.properties"), fullAssetRebuild);
+                options.precompress = precompressAssets;
+                if (previousBuildOutput != null && !previousBuildOutput.isBlank())
+                    options.previousBuildPath = Path.of(previousBuildOutput);
+                options.budgets = new PwaBudgets(maxCriticalGzipBytes, maxPrecacheBytes, maxAssetBytes);
+                options.prefetchConcurrency = prefetchConcurrency;
+                options.prefetchSlowConcurrency = prefetchSlowConcurrency;
+                options.prefetchBackgroundOnSaveData = prefetchBackgroundOnSaveData;
+                options.runtimeCachingRules = runtimeCachingRules;
+                options.runtimeCacheMaxBytes = runtimeCacheMaxBytes;
+                String assetManifestJson = buildAssetManifestJson(gwtAppPath, assetStrategies, options, getLog());
+                options.cache.save(getLog());
+
+                List<String> budgetViolations = options.budgets.checkAndReport(
+                    Path.of(projectDirectory).resolve("target/webfx-pwa-budget-report.json"), getLog());
+                if (!budgetViolations.isEmpty()) {
+                    if (failOnError)
+                        throw new MojoFailureException("PWA budgets exceeded: " + String.join(", ", budgetViolations));
+                    budgetViolations.forEach(violation -> getLog().warn("PWA budget exceeded: " + violation));
+                }
 
                 // Embed asset manifest in index.html
                 if (Files.exists(indexHtmlPath)) {
                     String indexHtml = Files.readString(indexHtmlPath, StandardCharsets.UTF_8);
-                    String assetScriptTag = "\n  <script type=\"application/json\" id=\"pwa-asset-manifest\">" + assetManifestJson + "</script>";
-
-                    // Insert before </head> or </body> if </head> doesn't exist
-                    if (indexHtml.contains("</head>")) {
-                        indexHtml = indexHtml.replace("</head>", assetScriptTag + "\n  </head>");
-                    } else if (indexHtml.contains("</body>")) {
-                        indexHtml = indexHtml.replace("</body>", assetScriptTag + "\n</body>");
-                    } else {
-                        // Fallback: append before </html> or at the end
-                        if (indexHtml.contains("</html>")) {
-                            indexHtml = indexHtml.replace("</html>", assetScriptTag + "\n</html>");
-                        } else {
-                            indexHtml += assetScriptTag;
-                        }
-                    }
+                    String assetScriptTag;
+                    if (externalAssetManifest) {
+                        String manifestFileName = writeExternalAssetManifest(gwtAppPath, assetManifestJson);
+                        assetScriptTag = "\n  <meta name=\"pwa-asset-manifest\" content=\"" + manifestFileName + "\">";
+                    } else
+                        assetScriptTag = "\n  <script type=\"application/json\" id=\"pwa-asset-manifest\">" + assetManifestJson + "</script>";
+                    if (injectPreloadHints && indexHtmlScan != null)
+                        assetScriptTag = toPreloadHintTags(gwtAppPath, assetStrategies, indexHtmlScan.getDirectAssets()) + assetScriptTag;
+
+                    // Insert before the first </head> (or </body> if </head> doesn't exist, or </html>, or at the end)
+                    indexHtml = HtmlAssetScanner.insertInHead(indexHtml, assetScriptTag);
 
                     TextFileReaderWriter.writeTextFileIfNewOrModified(indexHtml, indexHtmlPath);
+                    writeVersionFile(gwtAppPath, mavenBuildTimestamp, indexHtml);
                 } else {
                     getLog().warn("index.html not found at: " + indexHtmlPath);
                 }
@@ -173,66 +327,334 @@ public final class PwaMojo extends AbstractMojo {
 
             TextFileReaderWriter.writeTextFileIfNewOrModified(template,
                 gwtAppPath.resolve("pwa-service-worker.js"));
+        } catch (MojoFailureException e) {
+            throw e;
         } catch (Exception e) {
             throw new MojoFailureException(e);
         }
     }
 
-    private static boolean includesInCacheAsset(Path p) {
-        String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
-        return !name.startsWith(".") // ignore hidden files
-               && !name.endsWith(".map") // ignore source maps
-               && !name.endsWith(".txt"); // ignore text files
+    /**
+     * Builds the asset manifest by scanning gwtAppPath for the assets to cache (also used as entry point by the
+     * benchmarks). The assets are digested in parallel, but the manifest is still in the sorted order of their paths.
+     */
+    static String buildAssetManifestJson(Path gwtAppPath, Map<String, String> assetStrategies, Log log) throws IOException {
+        return buildAssetManifestJson(gwtAppPath, assetStrategies, new AssetManifestOptions(), log);
     }
 
     /**
-     * Extracts script and stylesheet references from index.html
-     * Returns paths relative to the document root (e.g., "/path/to/script.js")
+     * Same with options: reusing the digests of the unchanged assets recorded in the cache, writing the precompressed
+     * .gz siblings of the compressible assets, and generating the delta patches from the previous build (the sizes of
+     * these variants and patches are then recorded in the manifest), recording the precached assets in the budgets, and
+     * adding the prefetch and runtime caching settings of the service worker.
      */
-    private static Set<String> extractReferencedAssets(Path indexHtmlPath) throws IOException {
-        Set<String> assets = new LinkedHashSet<>();
-        String html = Files.readString(indexHtmlPath, StandardCharsets.UTF_8);
-
-        // Match <script src="...">
-        java.util.regex.Pattern scriptPattern = java.util.regex.Pattern.compile(
-            "<script[^>]+src=[\"']([^\"']+)[\"']",
-            java.util.regex.Pattern.CASE_INSENSITIVE
-        );
-        java.util.regex.Matcher scriptMatcher = scriptPattern.matcher(html);
-        while (scriptMatcher.find()) {
-            String src = scriptMatcher.group(1);
-            // Only include relative paths (not external URLs)
-            if (!src.startsWith("http://") && !src.startsWith("https://") && !src.startsWith("//")) {
-                // Normalize to start with / (remove leading ./ or just add /)
-                if (src.startsWith("./")) {
-                    src = src.substring(1); // Remove the dot, keep the slash
-                } else if (!src.startsWith("/")) {
-                    src = "/" + src;
+    static String buildAssetManifestJson(Path gwtAppPath, Map<String, String> assetStrategies, AssetManifestOptions options, Log log) throws IOException {
+        AssetManifestCache cache = options.cache;
+        boolean precompress = options.precompress;
+        Map<Path, AssetDigest> manifestMap = new LinkedHashMap<>();
+        Map<Path, Long> gzipVariantSizes = new HashMap<>();
+        Map<Path, AssetDeltaPatches.Patch> patches = Map.of();
+        if (Files.isDirectory(gwtAppPath)) {
+            List<Path> assetPaths;
+            try (BuildTracer.Span ignored = BuildTracer.span("asset walking");
+                 Stream<Path> stream = Files.walk(gwtAppPath)) {
+                assetPaths = stream.filter(Files::isRegularFile)
+                    .filter(PwaMojo::includesInCacheAsset)
+                    .map(gwtAppPath::relativize)
+                    .filter(r -> !r.toString().replace('\\', '/').equals("index.html"))
+                    .filter(r -> !r.startsWith(AssetDeltaPatches.PATCHES_DIRECTORY))
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+            AssetDigest[] digests = new AssetDigest[assetPaths.size()];
+            long[] gzipVariantSizeArray = new long[digests.length];
+            IntStream.range(0, digests.length).parallel().forEach(i -> {
+                Path p = gwtAppPath.resolve(assetPaths.get(i));
+                // The gzip size is computed only for the assets with a strategy (the only ones reporting it)
+                String assetPath = toAssetPath(assetPaths.get(i));
+                boolean withGzipSize = getStrategy(assetPath, assetStrategies) != null;
+                try {
+                    if (cache != null)
+                        digests[i] = cache.getOrComputeDigest(assetPath, p, withGzipSize);
+                    else
+                        try (BuildTracer.Span ignored = BuildTracer.span("asset digesting", assetPath)) {
+                            digests[i] = digestAsset(p, withGzipSize);
+                        }
+                } catch (Exception e) {
+                    // If hashing fails, we log and skip this file
+                    log.warn("Failed to hash asset: " + p + " - " + e.getMessage());
+                }
+                gzipVariantSizeArray[i] = -1;
+                if (precompress && digests[i] != null && isCompressibleAsset(p)) {
+                    try (BuildTracer.Span ignored = BuildTracer.span("asset precompression", assetPath)) {
+                        gzipVariantSizeArray[i] = writeGzipVariantIfStale(p);
+                    } catch (Exception e) {
+                        log.warn("Failed to precompress asset: " + p + " - " + e.getMessage());
+                    }
+                }
+            });
+            for (int i = 0; i < digests.length; i++) {
+                if (digests[i] != null) {
+                    manifestMap.put(assetPaths.get(i), digests[i]);
+                    if (gzipVariantSizeArray[i] >= 0)
+                        gzipVariantSizes.put(assetPaths.get(i), gzipVariantSizeArray[i]);
                 }
-                assets.add(src);
             }
+        } else {
+            log.warn("gwtAppPath not found: " + gwtAppPath);
+        }
+
+        Map<String, Map<String, Set<String>>> permutations = readGwtPermutations(gwtAppPath, log);
+        if (options.previousBuildPath != null) {
+            // Only the assets with a strategy are patched, as they are the ones cached by hash in the service worker
+            Map<Path, AssetDigest> patchCandidates = new LinkedHashMap<>();
+            manifestMap.forEach((r, digest) -> {
+                if (getStrategy(toAssetPath(r), assetStrategies) != null)
+                    patchCandidates.put(r, digest);
+            });
+            patches = AssetDeltaPatches.generatePatches(gwtAppPath, options.previousBuildPath, patchCandidates, permutations, log);
         }
+        if (options.budgets != null)
+            manifestMap.forEach((r, digest) -> {
+                String assetPath = toAssetPath(r);
+                String strategy = getStrategy(assetPath, assetStrategies);
+                if (strategy != null)
+                    options.budgets.recordAsset(assetPath, strategy, digest.size, digest.gzipSize);
+            });
+        Map<String, String> settings = new LinkedHashMap<>();
+        if (options.prefetchConcurrency > 0)
+            settings.put("prefetch", "{\"concurrency\": " + options.prefetchConcurrency
+                + ", \"slowConcurrency\": " + Math.max(1, Math.min(options.prefetchSlowConcurrency, options.prefetchConcurrency))
+                + ", \"backgroundOnSaveData\": " + options.prefetchBackgroundOnSaveData + "}");
+        if (!options.runtimeCachingRules.isEmpty()) {
+            StringBuilder rules = new StringBuilder();
+            options.runtimeCachingRules.forEach((regex, strategy) -> rules.append(rules.length() == 0 ? "" : ", ")
+                .append("{\"regex\": \"").append(escapeJson(regex)).append("\", \"strategy\": \"").append(strategy).append("\"}"));
+            settings.put("runtimeCaching", "{\"maxBytes\": " + options.runtimeCacheMaxBytes + ", \"rules\": [" + rules + "]}");
+        }
+        return toJsonAssetObject(manifestMap, gzipVariantSizes, permutations, patches, assetStrategies, settings, log);
+    }
 
-        // Match <link rel="stylesheet" href="...">
-        java.util.regex.Pattern cssPattern = java.util.regex.Pattern.compile(
-            "<link[^>]+rel=[\"']stylesheet[\"'][^>]+href=[\"']([^\"']+)[\"']|<link[^>]+href=[\"']([^\"']+)[\"'][^>]+rel=[\"']stylesheet[\"']",
-            java.util.regex.Pattern.CASE_INSENSITIVE
-        );
-        java.util.regex.Matcher cssMatcher = cssPattern.matcher(html);
-        while (cssMatcher.find()) {
-            String href = cssMatcher.group(1) != null ? cssMatcher.group(1) : cssMatcher.group(2);
-            if (href != null && !href.startsWith("http://") && !href.startsWith("https://") && !href.startsWith("//")) {
-                // Normalize to start with / (remove leading ./ or just add /)
-                if (href.startsWith("./")) {
-                    href = href.substring(1); // Remove the dot, keep the slash
-                } else if (!href.startsWith("/")) {
-                    href = "/" + href;
+    /**
+     * Reads the permutation mapping produced by the GWT compiler (compilation-mappings.txt) and returns, for each
+     * permutation file (ex: "/2F5F...4E0E.cache.js"), the values of the deferred binding properties it was compiled for
+     * (ex: user.agent = [safari]). The file is made of one block per permutation separated by blank lines, each block
+     * starting with the permutation file name followed by "property value" lines (a permutation file may appear in
+     * several blocks when permutations were collapsed).
+     */
+    static Map<String, Map<String, Set<String>>> readGwtPermutations(Path gwtAppPath, Log log) {
+        Map<String, Map<String, Set<String>>> permutations = new HashMap<>();
+        Path mappingsPath = gwtAppPath.resolve("compilation-mappings.txt");
+        if (!Files.isRegularFile(mappingsPath))
+            return permutations;
+        try {
+            Map<String, Set<String>> permutationProperties = null;
+            for (String line : Files.readAllLines(mappingsPath, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty())
+                    permutationProperties = null;
+                else if (line.endsWith(".cache.js"))
+                    permutationProperties = permutations.computeIfAbsent("/" + line, k -> new TreeMap<>());
+                else if (permutationProperties != null) {
+                    int spaceIndex = line.indexOf(' ');
+                    if (spaceIndex > 0)
+                        permutationProperties.computeIfAbsent(line.substring(0, spaceIndex), k -> new TreeSet<>())
+                            .add(line.substring(spaceIndex + 1).trim());
                 }
-                assets.add(href);
             }
+        } catch (IOException e) {
+            log.warn("Failed to read GWT permutations from " + mappingsPath + " - " + e.getMessage());
+        }
+        return permutations;
+    }
+
+    /**
+     * Writes the asset manifest in gwtAppPath as pwa-asset-manifest.{hash}.json (removing the previous ones) and returns
+     * its file name. As the name changes with the content, the service worker can keep it cached as long as index.html
+     * points to the same name.
+     */
+    private static String writeExternalAssetManifest(Path gwtAppPath, String assetManifestJson) throws IOException {
+        byte[] jsonBytes = assetManifestJson.getBytes(StandardCharsets.UTF_8);
+        String manifestFileName = EXTERNAL_ASSET_MANIFEST_PREFIX + toHex(ExportFingerprints.newSha256().digest(jsonBytes)).substring(0, 16) + ".json";
+        try (Stream<Path> stream = Files.list(gwtAppPath)) {
+            for (Path p : (Iterable<Path>) stream::iterator) {
+                String name = p.getFileName().toString();
+                if (name.startsWith(EXTERNAL_ASSET_MANIFEST_PREFIX) && !name.equals(manifestFileName))
+                    Files.delete(p);
+            }
+        }
+        TextFileReaderWriter.writeTextFileIfNewOrModified(assetManifestJson, gwtAppPath.resolve(manifestFileName));
+        return manifestFileName;
+    }
+
+    /**
+     * Writes the version file read by the service worker: the build timestamp (compared to the one of the service
+     * worker) and the hash of index.html. It's rewritten only if its content changed, so its ETag and Last-Modified
+     * headers stay the same and the conditional requests of the service worker get a 304 response.
+     */
+    private static void writeVersionFile(Path gwtAppPath, String mavenBuildTimestamp, String indexHtml) {
+        String indexHtmlHash = toHex(ExportFingerprints.newSha256().digest(indexHtml.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        TextFileReaderWriter.writeTextFileIfNewOrModified("{\"buildTimestamp\": \"" + escapeJson(String.valueOf(mavenBuildTimestamp))
+            + "\", \"indexHtml\": \"" + indexHtmlHash + "\"}\n", gwtAppPath.resolve(VERSION_FILE_NAME));
+    }
+
+    /**
+     * Converts a path pattern of the runtime caching rules to a regular expression (understood by both Java and
+     * JavaScript): ** matches any characters, * any characters except /, and ? a single character except /. The
+     * patterns not starting with / (ex: https://cdn.example.com/**) are matched against the full URL by the service
+     * worker.
+     */
+    /**
+     * Marks the assets referenced in index.html as CRITICAL (the critical ones) or BACKGROUND, unless webfx.xml already
+     * defines their strategy, either as essential assets or with a runtime caching rule (otherwise the service worker
+     * would precache them and ignore that rule). Returns the number of assets marked as CRITICAL.
+     */
+    static int addAutoDetectedAssetStrategies(Set<String> allAssets, Set<String> criticalAssets, Map<String, String> assetStrategies,
+                                              Map<String, String> runtimeCachingRules, Log log) {
+        int criticalCount = 0;
+        for (String asset : allAssets) {
+            if (assetStrategies.containsKey(asset) || getRuntimeStrategy(asset, runtimeCachingRules) != null)
+                continue;
+            String strategy = criticalAssets.contains(asset) ? "CRITICAL" : "BACKGROUND";
+            assetStrategies.put(asset, strategy);
+            if (criticalAssets.contains(asset))
+                criticalCount++;
+            log.debug("Auto-detected " + strategy.toLowerCase() + " asset from index.html: " + asset);
+        }
+        return criticalCount;
+    }
+
+    /**
+     * Returns the strategy of the first runtime caching rule matching that asset path (or null if none matches), as
+     * applied by the service worker.
+     */
+    static String getRuntimeStrategy(String assetPath, Map<String, String> runtimeCachingRules) {
+        for (Map.Entry<String, String> rule : runtimeCachingRules.entrySet())
+            if (Pattern.matches(rule.getKey(), assetPath))
+                return rule.getValue();
+        return null;
+    }
+
+    /**
+     * Returns the regex of a runtime caching pattern. The service worker matches the same-origin requests by their path
+     * in the app, and the other requests by their full URL. So the patterns with a scheme (ex: https://cdn.example.com/**)
+     * are kept as is, while the other ones are anchored to the app root (ex: images/** = /images/**).
+     */
+    static String toRuntimeCachingRegex(String pattern) {
+        return globToRegex(pattern.startsWith("/") || pattern.contains("://") ? pattern : "/" + pattern);
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder sb = new StringBuilder("^");
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                sb.append(".*");
+                i++;
+            } else if (c == '*')
+                sb.append("[^/]*");
+            else if (c == '?')
+                sb.append("[^/]");
+            else if ("\\^$.|+()[]{}".indexOf(c) >= 0)
+                sb.append('\\').append(c);
+            else
+                sb.append(c);
+        }
+        return sb.append('$').toString();
+    }
+
+    private static boolean isCompressibleAsset(Path p) {
+        String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
+        return COMPRESSIBLE_EXTENSIONS.contains(name.substring(name.lastIndexOf('.') + 1));
+    }
+
+    /**
+     * Writes the .gz sibling of that asset, unless it's already more recent than the asset, and returns its size.
+     */
+    static long writeGzipVariantIfStale(Path file) throws IOException {
+        Path gzipFile = file.resolveSibling(file.getFileName() + ".gz");
+        if (Files.isRegularFile(gzipFile) && Files.getLastModifiedTime(gzipFile).compareTo(Files.getLastModifiedTime(file)) >= 0)
+            return Files.size(gzipFile);
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".gz.tmp");
+        try (GZIPOutputStream gos = new GZIPOutputStream(Files.newOutputStream(tmpFile), 64 * 1024)) {
+            Files.copy(file, gos);
         }
+        Files.move(tmpFile, gzipFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(gzipFile);
+    }
+
+    private static String toAssetPath(Path relativePath) {
+        return "/" + relativePath.toString().replace(java.io.File.separatorChar, '/');
+    }
+
+    private static boolean includesInCacheAsset(Path p) {
+        String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
+        return !name.startsWith(".") // ignore hidden files
+               && !name.endsWith(".map") // ignore source maps
+               && !isPrecompressedVariant(p) // ignore precompressed variants
+               && !name.startsWith(EXTERNAL_ASSET_MANIFEST_PREFIX) // ignore the externalized asset manifest
+               && !name.equals(ContentAddressedAssets.CACHE_RULES_FILE_NAME) // ignore the caching rules
+               && !name.equals(VERSION_FILE_NAME) // ignore the version file (checked by the service worker on the network)
+               && !name.endsWith(".txt"); // ignore text files
+    }
+
+    // A .gz or .br file is a precompressed variant only if the uncompressed file exists next to it (otherwise it's an
+    // application asset, ex: a downloadable data.json.gz)
+    private static boolean isPrecompressedVariant(Path p) {
+        String fileName = p.getFileName().toString();
+        String lowerCaseName = fileName.toLowerCase(Locale.ROOT);
+        return (lowerCaseName.endsWith(".gz") || lowerCaseName.endsWith(".br"))
+               && Files.isRegularFile(p.resolveSibling(fileName.substring(0, fileName.length() - 3)));
+    }
+
+    /**
+     * Returns the preload hint tags of the existing CRITICAL assets not directly referenced by index.html (the GWT
+     * permutations are excluded, as only one of them is used by the browser).
+     */
+    private static String toPreloadHintTags(Path gwtAppPath, Map<String, String> assetStrategies, Set<String> directAssets) {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(assetStrategies).forEach((path, strategy) -> {
+            if (!"CRITICAL".equals(strategy) || directAssets.contains(path) || path.endsWith(".cache.js")
+                || !path.startsWith("/") || !Files.isRegularFile(gwtAppPath.resolve(path.substring(1))))
+                return;
+            String as = getPreloadDestination(path);
+            if (as != null) {
+                sb.append("\n  <link rel=\"preload\" href=\"").append(path.substring(1)).append("\" as=\"").append(as).append("\"");
+                if (as.equals("font") || as.equals("fetch")) // Fonts and fetches are always requested in CORS mode
+                    sb.append(" crossorigin");
+                sb.append(">");
+            }
+        });
+        return sb.toString();
+    }
 
-        return assets;
+    private static String getPreloadDestination(String path) {
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        switch (extension) {
+            case "js":
+            case "mjs":
+                return "script";
+            case "css":
+                return "style";
+            case "woff":
+            case "woff2":
+            case "ttf":
+            case "otf":
+                return "font";
+            case "png":
+            case "jpg":
+            case "jpeg":
+            case "gif":
+            case "svg":
+            case "webp":
+            case "avif":
+            case "ico":
+                return "image";
+            case "json":
+                return "fetch";
+            default:
+                return null;
+        }
     }
 
     private static String getStrategy(String path, Map<String, String> assetStrategies) {
@@ -248,14 +670,60 @@ public final class PwaMojo extends AbstractMojo {
         return null;
     }
 
-    private static String sha256Hex(Path file) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] bytes = Files.readAllBytes(file);
-        byte[] digest = md.digest(bytes);
-        return toHex(digest);
+    /**
+     * Result of the single read of an asset: SHA-256 hash, raw size and gzip size (-1 if not computed).
+     */
+    static final class AssetDigest {
+        final String hash;
+        final long size;
+        final long gzipSize;
+
+        AssetDigest(String hash, long size, long gzipSize) {
+            this.hash = hash;
+            this.size = size;
+            this.gzipSize = gzipSize;
+        }
     }
 
-    private static String toHex(byte[] bytes) {
+    /**
+     * Reads the asset once to compute its hash, its size and (optionally) its gzip size. The file is streamed through a
+     * direct buffer, and the gzip size is computed by counting the deflate output without writing it anywhere.
+     */
+    static AssetDigest digestAsset(Path file, boolean withGzipSize) throws IOException {
+        MessageDigest md = ExportFingerprints.newSha256();
+        ByteBuffer buffer = READ_BUFFER.get();
+        Deflater deflater = withGzipSize ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null; // nowrap as in GZIPOutputStream
+        long size = 0, deflatedSize = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                size += buffer.remaining();
+                if (deflater != null) {
+                    deflater.setInput(buffer.duplicate());
+                    while (!deflater.needsInput())
+                        deflatedSize += deflater.deflate(DEFLATE_BUFFER.get());
+                }
+                md.update(buffer);
+                buffer.clear();
+            }
+            if (deflater != null) {
+                deflater.finish();
+                while (!deflater.finished())
+                    deflatedSize += deflater.deflate(DEFLATE_BUFFER.get());
+            }
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+        return new AssetDigest(toHex(md.digest()), size, deflater == null ? -1 : GZIP_OVERHEAD + deflatedSize);
+    }
+
+    static String sha256Hex(Path file) throws IOException {
+        return digestAsset(file, false).hash;
+    }
+
+    static String toHex(byte[] bytes) {
         StringBuilder sb = new StringBuilder(bytes.length * 2);
         for (byte b : bytes) {
             sb.append(Character.forDigit((b >> 4) & 0xF, 16));
@@ -264,94 +732,97 @@ public final class PwaMojo extends AbstractMojo {
         return sb.toString();
     }
 
-    private static long gzipSize(Path file) {
-        try (java.io.InputStream is = Files.newInputStream(file);
-             java.io.OutputStream out = new java.io.OutputStream() {
-                 @Override
-                 public void write(int b) {
-                 }
-
-                 @Override
-                 public void write(byte[] b, int off, int len) {
-                 }
-             };
-             java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(out)) {
-            CountingOutputStream countingOs = new CountingOutputStream();
-            try (java.util.zip.GZIPOutputStream gos = new java.util.zip.GZIPOutputStream(countingOs)) {
-                Files.copy(file, gos);
-            }
-            return countingOs.getCount();
-        } catch (Exception e) {
+    static long gzipSize(Path file) {
+        try {
+            return digestAsset(file, true).gzipSize;
+        } catch (IOException e) {
             return 0;
         }
     }
 
-    private static class CountingOutputStream extends java.io.OutputStream {
-        private long count = 0;
-
-        @Override
-        public void write(int b) {
-            count++;
-        }
-
-        @Override
-        public void write(byte[] b) {
-            count += b.length;
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) {
-            count += len;
-        }
-
-        public long getCount() {
-            return count;
-        }
-    }
-
     // Path-keyed format: { "/path": "hash" } or { "/path": { "strategy":
-    // "CRITICAL"|"BACKGROUND", "hash": "...", "size": 123, "gzipSize": 45 } }
-    private static String toJsonAssetObject(Map<Path, String> map, Map<String, String> assetStrategies, Path gwtAppPath,
-                                            org.apache.maven.plugin.logging.Log log) {
+    // "CRITICAL"|"BACKGROUND", "hash": "...", "size": 123, "gzipSize": 45, "precompressed": { "gzip": 45 } } }
+    // ("precompressed" is present only if a .gz sibling was written for that asset, and "permutation": { "user.agent":
+    // ["safari"], ... } is added to the GWT permutation files, and "patch": { "from": "base hash", "path": "/pwa-patches/...",
+    // "size": 123 } to the assets with a delta patch). The settings of the service worker follow the assets in a single
+    // "settings" object, so they never mix with the asset paths (ex: "settings": { "prefetch": { "concurrency": 6,
+    // "slowConcurrency": 2, "backgroundOnSaveData": false }, "runtimeCaching": { "maxBytes": 52428800, "rules": [
+    // { "regex": "^/images/.*$", "strategy": "LAZY" } ] } }).
+    static String toJsonAssetObject(Map<Path, AssetDigest> map, Map<Path, Long> gzipVariantSizes, Map<String, Map<String, Set<String>>> permutations,
+                                    Map<Path, AssetDeltaPatches.Patch> patches, Map<String, String> assetStrategies, Map<String, String> settings, Log log) {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
         boolean first = true;
-        for (Map.Entry<Path, String> e : map.entrySet()) {
+        for (Map.Entry<Path, AssetDigest> e : map.entrySet()) {
             if (!first)
                 sb.append(",");
             first = false;
-            String path = "/" + e.getKey().toString().replace(java.io.File.separatorChar, '/');
-            String hash = e.getValue();
+            String path = toAssetPath(e.getKey());
+            AssetDigest digest = e.getValue();
             String strategy = getStrategy(path, assetStrategies);
-            long size = 0;
-            long gzipSize = 0;
-            try {
-                Path filePath = gwtAppPath.resolve(e.getKey());
-                size = Files.size(filePath);
-                if (strategy != null) {
-                    gzipSize = gzipSize(filePath);
-                }
-
-                if (size == 0) {
-                    log.warn("File size is 0 for asset: " + e.getKey());
-                }
-            } catch (IOException ex) {
-                log.warn("Failed to get file size for asset: " + e.getKey() + " - " + ex.getMessage());
+            if (digest.size == 0) {
+                log.warn("File size is 0 for asset: " + e.getKey());
             }
             sb.append("\n  \"").append(escapeJson(path)).append("\": ");
             if (strategy == null)
-                sb.append("\"").append(escapeJson(hash)).append("\"");
-            else
-                sb.append("{\"strategy\": \"").append(strategy).append("\", \"hash\": \"").append(escapeJson(hash))
-                    .append("\", \"size\": ").append(size).append(", \"gzipSize\": ").append(gzipSize).append("}");
+                sb.append("\"").append(escapeJson(digest.hash)).append("\"");
+            else {
+                Long gzipVariantSize = gzipVariantSizes.get(e.getKey());
+                sb.append("{\"strategy\": \"").append(strategy).append("\", \"hash\": \"").append(escapeJson(digest.hash))
+                    .append("\", \"size\": ").append(digest.size).append(", \"gzipSize\": ").append(gzipVariantSize != null ? gzipVariantSize : Math.max(digest.gzipSize, 0));
+                if (gzipVariantSize != null)
+                    sb.append(", \"precompressed\": {\"gzip\": ").append(gzipVariantSize).append("}");
+                Map<String, Set<String>> permutationProperties = permutations.get(path);
+                if (permutationProperties != null)
+                    appendJsonPermutation(sb, permutationProperties);
+                AssetDeltaPatches.Patch patch = patches.get(e.getKey());
+                if (patch != null)
+                    sb.append(", \"patch\": {\"from\": \"").append(patch.baseHash).append("\", \"path\": \"").append(escapeJson(patch.path))
+                        .append("\", \"size\": ").append(patch.size).append("}");
+                sb.append("}");
+            }
+        }
+        if (!settings.isEmpty()) {
+            if (!first)
+                sb.append(",");
+            first = false;
+            sb.append("\n  \"").append(SETTINGS_KEY).append("\": {");
+            boolean firstSetting = true;
+            for (Map.Entry<String, String> setting : settings.entrySet()) {
+                if (!firstSetting)
+                    sb.append(",");
+                firstSetting = false;
+                sb.append("\n    \"").append(escapeJson(setting.getKey())).append("\": ").append(setting.getValue());
+            }
+            sb.append("\n  }");
         }
-        if (!map.isEmpty())
+        if (!first)
             sb.append("\n");
         sb.append("}");
         return sb.toString();
     }
 
-    private static String escapeJson(String s) {
+    private static void appendJsonPermutation(StringBuilder sb, Map<String, Set<String>> permutationProperties) {
+        sb.append(", \"permutation\": {");
+        boolean firstProperty = true;
+        for (Map.Entry<String, Set<String>> property : permutationProperties.entrySet()) {
+            if (!firstProperty)
+                sb.append(", ");
+            firstProperty = false;
+            sb.append("\"").append(escapeJson(property.getKey())).append("\": [");
+            boolean firstValue = true;
+            for (String value : property.getValue()) {
+                if (!firstValue)
+                    sb.append(", ");
+                firstValue = false;
+                sb.append("\"").append(escapeJson(value)).append("\"");
+            }
+            sb.append("]");
+        }
+        sb.append("}");
+    }
+
+    static String escapeJson(String s) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < s.length(); i++) {
             char c = s.charAt(i);
@@ -0,0 +1,119 @@
+package dev.webfx.mavenplugin;
+
+import dev.webfx.cli.commands.CommandWorkspace;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the CLI workspaces shared by the goals executed in the same Maven invocation (ex: webfx:update, then
+ * install with the export, then webfx:pwa), so the module graph and webfx.xml files are parsed only once. The registry
+ * is stored in the session data of the Maven session, with one entry per project directory. An entry is reused only if
+ * none of the module files (webfx.xml, pom.xml and src/main files) of its project directory were rewritten since the
+ * workspace creation (typically by webfx:update), otherwise a new workspace is created for that project directory. A
+ * goal that modifies the workspace model (ex: the export, which rewrites the webfx.xml document in memory) invalidates
+ * its entry afterwards, so the next goals don't reuse a modified model.
+ */
+final class SessionWorkspaces {
+
+    private static final String SESSION_DATA_KEY = SessionWorkspaces.class.getName();
+
+    // Holder of the registry stored in the session data. Being a class of this plugin, a registry stored by another
+    // version of this plugin (loaded by another class loader) is not an instance of it, and is therefore not used.
+    private static final class Registry {
+        final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    }
+
+    private static final class Entry {
+        final CommandWorkspace workspace;
+        final Map<Path, String> moduleFingerprints;
+
+        Entry(CommandWorkspace workspace, Map<Path, String> moduleFingerprints) {
+            this.workspace = workspace;
+            this.moduleFingerprints = moduleFingerprints;
+        }
+    }
+
+    /**
+     * Returns the workspace of that project directory, shared with the previous goals of that Maven session when still
+     * valid (a new workspace is created if session is null).
+     */
+    static CommandWorkspace getOrCreateWorkspace(MavenSession session, String projectDirectory) {
+        Map<String, Entry> entries = getSessionEntries(session);
+        if (entries == null)
+            return createWorkspace(projectDirectory);
+        String key = Path.of(projectDirectory).toAbsolutePath().normalize().toString();
+        Map<Path, String> moduleFingerprints = computeModuleFingerprints(Path.of(key));
+        Entry entry = entries.get(key);
+        if (entry != null && entry.moduleFingerprints.equals(moduleFingerprints)) {
+            BuildTracer.span("workspace reuse").close();
+            return entry.workspace;
+        }
+        // Note: the fingerprints are computed before the workspace creation, so any change happening during that
+        // creation is detected next time.
+        entry = new Entry(createWorkspace(projectDirectory), moduleFingerprints);
+        entries.put(key, entry);
+        return entry.workspace;
+    }
+
+    /**
+     * Removes the workspace of that project directory from the registry, so the next goals of that Maven session don't
+     * reuse it (to be called by the goals that modify the workspace model).
+     */
+    static void invalidateWorkspace(MavenSession session, String projectDirectory) {
+        Map<String, Entry> entries = getSessionEntries(session);
+        if (entries != null)
+            entries.remove(Path.of(projectDirectory).toAbsolutePath().normalize().toString());
+    }
+
+    private static CommandWorkspace createWorkspace(String projectDirectory) {
+        try (BuildTracer.Span ignored = BuildTracer.span("workspace creation")) {
+            return new CommandWorkspace(projectDirectory);
+        }
+    }
+
+    private static Map<String, Entry> getSessionEntries(MavenSession session) {
+        SessionData sessionData = session == null || session.getRepositorySession() == null ? null : session.getRepositorySession().getData();
+        if (sessionData == null)
+            return null;
+        Registry newRegistry = new Registry();
+        if (sessionData.set(SESSION_DATA_KEY, null, newRegistry))
+            return newRegistry.entries;
+        Object registry = sessionData.get(SESSION_DATA_KEY);
+        // The registry may come from another class loader if several versions of this plugin are used in the build, in
+        // which case we don't share the workspaces with them.
+        return registry instanceof Registry ? ((Registry) registry).entries : null;
+    }
+
+    /**
+     * Computes the fingerprints of all the modules located in the project directory (i.e. the directories with a
+     * webfx.xml or pom.xml file), skipping the target and hidden directories.
+     */
+    private static Map<Path, String> computeModuleFingerprints(Path projectDirectory) {
+        Map<Path, String> moduleFingerprints = new HashMap<>();
+        try {
+            Files.walkFileTree(projectDirectory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    String name = Objects.toString(dir.getFileName(), "");
+                    if (!dir.equals(projectDirectory) && (name.startsWith(".") || name.equals("target") || name.equals("src")))
+                        return FileVisitResult.SKIP_SUBTREE;
+                    if (Files.isRegularFile(dir.resolve("webfx.xml")) || Files.isRegularFile(dir.resolve("pom.xml")))
+                        moduleFingerprints.put(projectDirectory.relativize(dir), ExportFingerprints.computeModuleFingerprint(dir));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // An unreadable project can't be considered unchanged, so we return fingerprints that never match
+            moduleFingerprints.put(projectDirectory, "unreadable:" + System.nanoTime());
+        }
+        return moduleFingerprints;
+    }
+}
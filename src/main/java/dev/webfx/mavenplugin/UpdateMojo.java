@@ -60,13 +60,17 @@ public class UpdateMojo extends AbstractMojo {
 		MavenUtil.setMavenArtifactDownloader(this::downloadArtifact);
 
 		try {
-			CommandWorkspace workspace = new CommandWorkspace(projectDirectory);
-			Update.execute(false, new UpdateTasks(), false, workspace);
+			CommandWorkspace workspace = SessionWorkspaces.getOrCreateWorkspace(session, projectDirectory);
+			try (BuildTracer.Span ignored = BuildTracer.span("update")) {
+				Update.execute(false, new UpdateTasks(), false, workspace);
+			}
 		} catch (Exception e) {
 			if (failOnError) {
 				throw new MojoFailureException("Failed to complete update: " + e.getMessage());
 			}
 			Logger.log("ERROR: " + e.getMessage());
+		} finally {
+			BuildTracer.writeTraceAndLogSummary("update", session, getLog());
 		}
 	}
 
@@ -74,7 +78,7 @@ public class UpdateMojo extends AbstractMojo {
 	// ======= (faster than the default one in WebFX CLI as it doesn't require a Maven restart between 2 calls) ========
 
 	public boolean downloadArtifact(String groupId, String artifactId, String version, String classifier) {
-		try {
+		try (BuildTracer.Span ignored = BuildTracer.span("artifact resolution", groupId + ":" + artifactId + ":" + version + (classifier == null ? "" : ":" + classifier))) {
 			ProjectBuildingRequest buildingRequest =
 					new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
 			buildingRequest.setRemoteRepositories(pomRemoteRepositories);
@@ -4,20 +4,23 @@ console.log("PWA mode is on - mavenBuildTimestamp = " + MAVEN_BUILD_TIMESTAMP);
 
 const CACHE_NAME = "webfx-pwa-cache";
 const DEFAULT_PRE_CACHE = false;
+// Key of the service worker settings in the asset manifest (all the other keys are asset paths)
+const ASSET_MANIFEST_SETTINGS_KEY = "settings";
 
 function normalizeAsset(assetLike) {
     const hashToInfo = {};
     const pathToHash = {};
     try {
         for (const [path, v] of Object.entries(assetLike || {})) {
+            if (path === ASSET_MANIFEST_SETTINGS_KEY) continue;
             let hash, preCache;
             if (typeof v === "string") { hash = v; preCache = DEFAULT_PRE_CACHE; }
             else if (v && typeof v.hash === "string") {
                 hash = v.hash;
                 preCache = (typeof v.preCache !== "undefined") ? !!v.preCache : DEFAULT_PRE_CACHE;
-                // Capture size and strategy
-                if (v.size) hashToInfo[hash] = { path, preCache, size: v.size, gzipSize: v.gzipSize, strategy: v.strategy };
-                else hashToInfo[hash] = { path, preCache, strategy: v.strategy };
+                // Capture size and strategy (gzipSize is the exact size of the .gz sibling when the asset is precompressed)
+                if (v.size) hashToInfo[hash] = { path, preCache, size: v.size, gzipSize: v.gzipSize, precompressed: v.precompressed, strategy: v.strategy, permutation: v.permutation, patch: v.patch };
+                else hashToInfo[hash] = { path, preCache, strategy: v.strategy, permutation: v.permutation };
             }
             if (typeof path === "string" && hash && !hashToInfo[hash]) {
                 hashToInfo[hash] = { path, preCache };
@@ -33,17 +36,95 @@ function normalizeAsset(assetLike) {
 // Asset maps will be initialized from index.html during install
 let HASH_TO_INFO = {};
 let PATH_TO_HASH = {};
+// Hashes of the GWT permutations not precached (because they are not the one of this client)
+let LAZY_PERMUTATION_HASHES = new Set();
+// URL of the externalized asset manifest currently loaded (null if the manifest is inlined in index.html)
+let ASSET_MANIFEST_URL = null;
+// Prefetch settings generated by the pwa goal in the asset manifest (these defaults apply to the manifests without them)
+const DEFAULT_PREFETCH_SETTINGS = { concurrency: 6, slowConcurrency: 2, backgroundOnSaveData: false };
+let PREFETCH_SETTINGS = DEFAULT_PREFETCH_SETTINGS;
+// Runtime caching rules generated by the pwa goal from webfx.xml (the first rule matching the request path applies)
+const DEFAULT_RUNTIME_CACHE_MAX_BYTES = 50 * 1024 * 1024;
+let RUNTIME_CACHING = { maxBytes: DEFAULT_RUNTIME_CACHE_MAX_BYTES, rules: [] };
 
-// Helper to extract asset manifest from index.html text
-function extractAssetManifest(htmlText) {
+const EXTERNAL_ASSET_MANIFEST_REGEX = /pwa-asset-manifest\.[a-f0-9]+\.json$/i;
+
+function applyAssetManifest(assetData, source) {
+    const { hashToInfo, pathToHash } = normalizeAsset(assetData);
+    HASH_TO_INFO = hashToInfo;
+    PATH_TO_HASH = pathToHash;
+    LAZY_PERMUTATION_HASHES = computeLazyPermutationHashes(hashToInfo);
+    const settings = (assetData && assetData[ASSET_MANIFEST_SETTINGS_KEY]) || {};
+    PREFETCH_SETTINGS = Object.assign({}, DEFAULT_PREFETCH_SETTINGS, settings.prefetch);
+    RUNTIME_CACHING = toRuntimeCaching(settings.runtimeCaching);
+    console.log("📦 Loaded asset manifest from " + source + ":", Object.keys(HASH_TO_INFO).length, "assets");
+}
+
+// Returns the GWT user.agent property value of this client, as computed by the GWT user agent property provider (the
+// document mode is not available in the service worker, so the legacy IE values are not detected).
+function detectGwtUserAgent() {
+    const ua = ((self.navigator && self.navigator.userAgent) || "").toLowerCase();
+    if (ua.indexOf("webkit") !== -1) return "safari";
+    if (ua.indexOf("gecko") !== -1) return "gecko1_8";
+    return null;
+}
+
+// A browser runs only one GWT permutation, so the permutations not matching this client are not precached (they are
+// cached only if fetched). If several permutations match (ex: other properties such as locale), they are all precached,
+// as the one selected by the .nocache.js script can't be identified, and the critical assets must include the app code.
+// For the same reason, all permutations are precached if none matches (ex: unknown user agent).
+function computeLazyPermutationHashes(hashToInfo) {
+    const permutations = Object.entries(hashToInfo).filter(([, info]) => info && info.permutation);
+    const userAgent = detectGwtUserAgent();
+    const matching = permutations.filter(([, info]) => {
+        const userAgents = info.permutation["user.agent"];
+        return !userAgents || (userAgent && userAgents.includes(userAgent));
+    });
+    if (matching.length === 0) return new Set();
+    const matchingHashes = new Set(matching.map(([hash]) => hash));
+    return new Set(permutations.map(([hash]) => hash).filter(hash => !matchingHashes.has(hash)));
+}
+
+function toRuntimeCaching(runtimeCaching) {
+    const rules = [];
+    ((runtimeCaching && runtimeCaching.rules) || []).forEach(rule => {
+        try {
+            rules.push({ regex: new RegExp(rule.regex), strategy: rule.strategy });
+        } catch (e) {
+            console.warn("Ignoring invalid runtime caching rule " + rule.regex, e);
+        }
+    });
+    return { maxBytes: (runtimeCaching && runtimeCaching.maxBytes) || DEFAULT_RUNTIME_CACHE_MAX_BYTES, rules };
+}
+
+// Loads the externalized asset manifest. Its name contains its content hash, so it's fetched and parsed only once per
+// version, and then served from the cache (or not even parsed again if it's the one already loaded).
+async function loadExternalAssetManifest(manifestPath) {
+    const request = toScopedRequest(manifestPath);
+    if (ASSET_MANIFEST_URL === request.url) return true;
+    const cache = await caches.open(CACHE_NAME);
+    let response = await cache.match(request);
+    if (!response) {
+        response = await fetch(request);
+        if (!response.ok) throw new Error("HTTP " + response.status + " for " + request.url);
+        await cache.put(request, response.clone());
+    }
+    applyAssetManifest(await response.json(), manifestPath);
+    ASSET_MANIFEST_URL = request.url;
+    return true;
+}
+
+// Helper to extract asset manifest from index.html text (either inlined or pointed by a meta tag)
+async function extractAssetManifest(htmlText) {
     try {
+        const pointerMatch = htmlText.match(/<meta\s+name=["']pwa-asset-manifest["']\s+content=["']([^"']+)["']\s*\/?>/i);
+        if (pointerMatch) {
+            return await loadExternalAssetManifest(pointerMatch[1]);
+        }
         const assetMatch = htmlText.match(/<script\s+type=["']application\/json["']\s+id=["']pwa-asset-manifest["']>([^<]+)<\/script>/i);
         if (assetMatch) {
-            const assetData = JSON.parse(assetMatch[1]);
-            const { hashToInfo, pathToHash } = normalizeAsset(assetData);
-            HASH_TO_INFO = hashToInfo;
-            PATH_TO_HASH = pathToHash;
-            console.log("📦 Loaded asset manifest from index.html:", Object.keys(HASH_TO_INFO).length, "assets");
+            applyAssetManifest(JSON.parse(assetMatch[1]), "index.html");
+            ASSET_MANIFEST_URL = null;
             return true;
         }
     } catch (e) {
@@ -52,6 +133,52 @@ function extractAssetManifest(htmlText) {
     return false;
 }
 
+// Version file written by the pwa goal next to index.html
+const VERSION_FILE_PATH = "/pwa-version.json";
+let versionCheckPromise = null;
+let lastDetectedVersion = null;
+
+// Checks whether a new version was deployed with a conditional request on the version file (so it's usually just a 304
+// response), and only then reads the new index.html to load its asset manifest and update the service worker.
+function checkForNewVersion() {
+    if (!versionCheckPromise) {
+        versionCheckPromise = fetchNewVersion().catch(e => console.warn("Version check failed", e)).finally(() => versionCheckPromise = null);
+    }
+    return versionCheckPromise;
+}
+
+async function fetchNewVersion() {
+    const cache = await caches.open(CACHE_NAME);
+    const request = toScopedRequest(VERSION_FILE_PATH);
+    const cachedResponse = await cache.match(request);
+    const headers = {};
+    if (cachedResponse) {
+        const etag = cachedResponse.headers.get("ETag"), lastModified = cachedResponse.headers.get("Last-Modified");
+        if (etag) headers["If-None-Match"] = etag;
+        else if (lastModified) headers["If-Modified-Since"] = lastModified;
+    }
+    // no-store, so the conditional request is not answered by the HTTP cache, and a 304 response is returned as is
+    const response = await fetch(request, { cache: "no-store", headers });
+    let version;
+    if (response.status === 304 && cachedResponse) {
+        version = await cachedResponse.json();
+    } else if (response.ok) {
+        version = await response.clone().json();
+        await cache.put(request, response);
+    } else return;
+    if (version.buildTimestamp === MAVEN_BUILD_TIMESTAMP || version.buildTimestamp === lastDetectedVersion) return;
+    lastDetectedVersion = version.buildTimestamp;
+    console.log("🔆🔆🔆🔆🔆 Detected new version: deployed=" + version.buildTimestamp + ", build=" + MAVEN_BUILD_TIMESTAMP);
+    const indexHtmlRequest = toScopedRequest("/index.html");
+    const indexHtmlResponse = await fetch(indexHtmlRequest, { cache: "no-cache" });
+    if (indexHtmlResponse.ok) {
+        await extractAssetManifest(await indexHtmlResponse.clone().text());
+        await cache.put(indexHtmlRequest, indexHtmlResponse);
+    }
+    if (self.registration && self.registration.update) {
+        self.registration.update().catch(() => { });
+    }
+}
 
 // Build a cache Request for a given content hash
 function toHashRequest(hash) {
@@ -101,32 +228,135 @@ function toManifestPathFromRequest(request) {
 }
 
 // State tracking
-const activeDownloads = new Map(); // URL -> Promise<Response>
+const activeDownloads = new Map(); // Path -> Promise<{ body, init, uncounted }> of the downloads in progress (removed when complete)
 let totalBytes = 0;
 let downloadedBytes = 0;
 let isCriticalDone = false;
 
+// Progress reports are coalesced: at most one message per client every PROGRESS_REPORT_INTERVAL_MS (with a single
+// client lookup), except for the completion of the critical downloads and of all the downloads, reported immediately.
+const PROGRESS_REPORT_INTERVAL_MS = 150;
+let pendingProgressReport = null; // Promise of the next scheduled report
+let lastProgressReportTime = 0;
+let reportedCriticalDone = false;
+let progressCompleted = false;
+
 // Helper to report progress
-const reportProgress = async (completed = false) => {
-    if (completed) console.log("🎉 Completed");
-    const clients = await self.clients.matchAll({ includeUncontrolled: true });
-    clients.forEach(client => {
-        client.postMessage({
-            type: 'loading_progress',
-            current: downloadedBytes,
-            total: totalBytes,
-            completed: completed,
-            criticalCompleted: isCriticalDone
+const reportProgress = (completed = false) => {
+    if (completed || isCriticalDone !== reportedCriticalDone) {
+        return sendProgress(completed);
+    }
+    if (!pendingProgressReport) {
+        const delay = Math.max(0, lastProgressReportTime + PROGRESS_REPORT_INTERVAL_MS - Date.now());
+        pendingProgressReport = new Promise(resolve => setTimeout(resolve, delay)).then(() => {
+            pendingProgressReport = null;
+            // Not sending outdated reports after the final one
+            if (!progressCompleted) return sendProgress(false);
         });
-    });
+    }
+    return pendingProgressReport;
 };
 
+async function sendProgress(completed) {
+    if (completed) {
+        console.log("🎉 Completed");
+        progressCompleted = true;
+    }
+    lastProgressReportTime = Date.now();
+    reportedCriticalDone = isCriticalDone;
+    // The message is built before the client lookup, so it's the same for all clients
+    const message = {
+        type: 'loading_progress',
+        current: downloadedBytes,
+        total: totalBytes,
+        completed: completed,
+        criticalCompleted: isCriticalDone
+    };
+    try {
+        const clients = await self.clients.matchAll({ includeUncontrolled: true });
+        clients.forEach(client => client.postMessage(message));
+    } catch (e) {
+        console.warn("Failed to report progress", e);
+    }
+}
+
+// Foreground requests (the ones of the page) in flight, during which the background prefetch is paused
+let foregroundRequestCount = 0;
+let foregroundIdleWaiters = [];
+// Maximum pause of the background prefetch (so it's not paused forever by long-lived requests)
+const FOREGROUND_PAUSE_MAX_MS = 10000;
+
+function trackForegroundRequest(responsePromise) {
+    foregroundRequestCount++;
+    const done = () => {
+        if (--foregroundRequestCount === 0) {
+            const waiters = foregroundIdleWaiters;
+            foregroundIdleWaiters = [];
+            waiters.forEach(resolve => resolve());
+        }
+    };
+    responsePromise.then(done, done);
+    return responsePromise;
+}
+
+function waitForForegroundIdle() {
+    if (foregroundRequestCount === 0) return Promise.resolve();
+    return new Promise(resolve => {
+        foregroundIdleWaiters.push(resolve);
+        setTimeout(resolve, FOREGROUND_PAUSE_MAX_MS);
+    });
+}
+
+function getNetworkConnection() {
+    return (self.navigator && self.navigator.connection) || null;
+}
+
+// The concurrency is lowered on slow connections (2g, 3g) and when the user asked to save data
+function getPrefetchConcurrency() {
+    const connection = getNetworkConnection();
+    const slow = connection && (connection.saveData || /^(slow-2g|2g|3g)$/.test(connection.effectiveType || ""));
+    return Math.max(1, (slow ? PREFETCH_SETTINGS.slowConcurrency : PREFETCH_SETTINGS.concurrency) || 1);
+}
+
+function isBackgroundPrefetchAllowed() {
+    const connection = getNetworkConnection();
+    return !(connection && connection.saveData) || !!PREFETCH_SETTINGS.backgroundOnSaveData;
+}
+
+// Runs the prefetch tasks in that order with a bounded number of concurrent downloads (the concurrency is read again
+// each time a task completes, so it follows the connection changes). The background tasks wait for the foreground
+// requests of the page to complete before starting.
+async function runPrefetchQueue(tasks, background, prefetchTask) {
+    let next = 0, running = 0;
+    await new Promise(resolve => {
+        const pump = async () => {
+            while (next < tasks.length && running < getPrefetchConcurrency()) {
+                const task = tasks[next++];
+                running++;
+                (async () => {
+                    try {
+                        if (background) await waitForForegroundIdle();
+                        await prefetchTask(task);
+                    } catch (e) {
+                        console.error("Prefetch task failed", e);
+                    } finally {
+                        running--;
+                        pump();
+                    }
+                })();
+            }
+            if (next >= tasks.length && running === 0) resolve();
+        };
+        pump();
+    });
+}
+
 // Helper to check if critical assets are already in cache (for SW restarts)
 const checkCriticalAssets = async () => {
     if (isCriticalDone) return true;
     try {
         const cache = await caches.open(CACHE_NAME);
-        const critical = Object.entries(HASH_TO_INFO).filter(([, info]) => info && info.strategy === 'CRITICAL');
+        const critical = Object.entries(HASH_TO_INFO).filter(([hash, info]) => info && info.strategy === 'CRITICAL' && !LAZY_PERMUTATION_HASHES.has(hash));
 
         // If no critical assets, we are done
         if (critical.length === 0) {
@@ -166,12 +396,13 @@ self.addEventListener('message', event => {
     }
 });
 
-// Helper to fetch with progress (Streaming)
-const fetchWithProgress = async (path, info) => {
+// Helper to fetch with progress (Streaming). If the network drops while downloading a large asset (hash != null), the
+// bytes already received are stored in the partial cache, so the next attempt resumes from there with range requests.
+const fetchWithProgress = async (path, info, hash) => {
     // Resolve manifest path to absolute URL relative to scope
     const request = toScopedRequest(path);
     const response = await fetch(request, { cache: "no-cache" });
-    if (!response.ok) return response;
+    if (!response.ok) return { body: await response.blob(), init: toDownloadResponseInit(response) };
 
     const reader = response.body.getReader();
     const contentLength = +response.headers.get('Content-Length');
@@ -195,51 +426,412 @@ const fetchWithProgress = async (path, info) => {
         reportProgress();
     }
 
-    const stream = new ReadableStream({
-        async start(controller) {
-            while (true) {
-                // Simulate slow network for testing
-                // if (true) await new Promise(r => setTimeout(r, 500));
+    const chunks = [];
+    let receivedBytes = 0;
+    while (true) {
+        // Simulate slow network for testing
+        // if (true) await new Promise(r => setTimeout(r, 500));
 
-                const { done, value } = await reader.read();
-                if (done) {
-                    controller.close();
-                    break;
-                }
-                downloadedBytes += value.length;
-                if (downloadedBytes > totalBytes) totalBytes = downloadedBytes;
-                controller.enqueue(value);
-                reportProgress();
+        let result;
+        try {
+            result = await reader.read();
+        } catch (e) {
+            if (hash && info.size >= RANGE_DOWNLOAD_MIN_SIZE) {
+                // The resumed download counts the stored bytes again
+                downloadedBytes -= receivedBytes;
+                await storePartialDownload(hash, response, new Blob(chunks)).catch(() => { });
             }
+            throw e;
         }
-    });
+        const { done, value } = result;
+        if (done) break;
+        downloadedBytes += value.length;
+        receivedBytes += value.length;
+        if (downloadedBytes > totalBytes) totalBytes = downloadedBytes;
+        chunks.push(value);
+        reportProgress();
+    }
 
-    return new Response(stream, {
-        status: response.status,
-        statusText: response.statusText,
-        headers: response.headers
-    });
+    return { body: new Blob(chunks), init: toDownloadResponseInit(response) };
 };
 
-// Helper to get or fetch (Deduplication)
-const getOrFetch = (url, info) => {
-    if (activeDownloads.has(url)) {
-        return activeDownloads.get(url).then(res => res.clone());
+// The body of the downloaded responses is decoded, so the encoding headers no longer apply
+function toDownloadResponseInit(response) {
+    const headers = new Headers(response.headers);
+    headers.delete("Content-Encoding");
+    headers.delete("Content-Length");
+    return { status: response.status, statusText: response.statusText, headers };
+}
+
+// Partial downloads of the large assets, stored chunk by chunk so they can be resumed after a network drop or a service
+// worker restart (the keys are the hash requests of the assets followed by ?chunk=index). The large assets are first
+// downloaded normally (so they are transferred compressed), and range requests are used only to resume an interrupted
+// download, as fetch sends them with Accept-Encoding: identity.
+const PARTIAL_CACHE_NAME = "webfx-pwa-partial";
+const RANGE_DOWNLOAD_MIN_SIZE = 1024 * 1024;
+const RANGE_CHUNK_SIZE = 512 * 1024;
+const RANGE_CHUNK_ATTEMPTS = 3;
+// Header storing, in each chunk of the partial cache, the ETag (or Last-Modified) of the asset version it was fetched from
+const RANGE_VALIDATOR_HEADER = "X-WebFX-Range-Validator";
+
+function toChunkRequest(hash, index) {
+    return new Request(toHashRequest(hash).url + "?chunk=" + index);
+}
+
+// Stores the complete chunks of the decoded bytes received before an interruption, with the validator of the asset
+// version (a weak ETag can't be used in If-Range, and it may be the one of the compressed representation)
+async function storePartialDownload(hash, response, received) {
+    const etag = response.headers.get("ETag");
+    const validator = (etag && !etag.startsWith("W/") ? etag : null) || response.headers.get("Last-Modified");
+    const chunkCount = Math.floor(received.size / RANGE_CHUNK_SIZE);
+    if (!validator || chunkCount === 0) return;
+    const partialCache = await caches.open(PARTIAL_CACHE_NAME);
+    const chunkHeaders = { [RANGE_VALIDATOR_HEADER]: validator };
+    const contentType = response.headers.get("Content-Type");
+    if (contentType) chunkHeaders["Content-Type"] = contentType;
+    for (let index = 0; index < chunkCount; index++)
+        await partialCache.put(toChunkRequest(hash, index), new Response(received.slice(index * RANGE_CHUNK_SIZE, (index + 1) * RANGE_CHUNK_SIZE), { headers: chunkHeaders }));
+}
+
+async function hasPartialDownload(hash) {
+    const partialCache = await caches.open(PARTIAL_CACHE_NAME);
+    return !!(await partialCache.match(toChunkRequest(hash, 0)));
+}
+
+async function deletePartialDownload(hash) {
+    const partialCache = await caches.open(PARTIAL_CACHE_NAME);
+    const prefix = toHashRequest(hash).url + "?chunk=";
+    const requests = await partialCache.keys();
+    await Promise.all(requests.filter(req => req.url.startsWith(prefix)).map(req => partialCache.delete(req)));
+}
+
+// Fetches that range of the asset (retrying after network errors), or returns null if the server doesn't return it, or
+// if its Content-Range doesn't match the requested range and the expected total size
+async function fetchRange(request, start, end, totalSize, validator) {
+    const headers = { Range: "bytes=" + start + "-" + end };
+    if (validator) headers["If-Range"] = validator;
+    for (let attempt = 1; ; attempt++) {
+        try {
+            const response = await fetch(request, { cache: "no-store", headers });
+            if (response.status !== 206 || response.headers.get("Content-Range") !== "bytes " + start + "-" + end + "/" + totalSize) {
+                if (response.body) response.body.cancel().catch(() => { });
+                return null;
+            }
+            const blob = await response.blob();
+            return blob.size === end - start + 1 ? { blob, response } : null;
+        } catch (e) {
+            if (attempt >= RANGE_CHUNK_ATTEMPTS) throw e;
+            await new Promise(resolve => setTimeout(resolve, 1000 * attempt));
+        }
     }
-    const promise = fetchWithProgress(url, info).then(res => {
-        // We don't remove from map immediately, we want to share the response
-        // But Response can only be cloned? Yes.
-        return res;
-    });
-    activeDownloads.set(url, promise);
-    // Cleanup map when done? No, we might need to clone again? 
-    // Actually, once consumed/cancelled, it's done. 
-    // But for simplicity, we keep it during the session or cleanup later.
-    // Better: cleanup when stream is done? Hard to hook.
-    // For now, simple map is fine for the install phase.
-    return promise.then(res => res.clone());
+}
+
+// Resumes the interrupted download of a large asset in ranges, skipping the chunks already stored. Returns null if the
+// server doesn't support range requests or if the asset changed since the stored chunks (it's then fully downloaded).
+async function downloadInRanges(path, hash, info) {
+    const partialCache = await caches.open(PARTIAL_CACHE_NAME);
+    const request = toScopedRequest(path);
+    // The remaining ranges are transferred uncompressed
+    totalBytes += info.size - (info.assumedSize || 0);
+    info.assumedSize = info.size;
+    const chunks = [];
+    let validator = null, contentType = null, countedBytes = 0;
+    const countBytes = n => {
+        countedBytes += n;
+        downloadedBytes += n;
+        reportProgress();
+    };
+    for (let index = 0, start = 0; start < info.size; index++, start += RANGE_CHUNK_SIZE) {
+        const end = Math.min(start + RANGE_CHUNK_SIZE, info.size) - 1;
+        const chunkRequest = toChunkRequest(hash, index);
+        const storedChunk = await partialCache.match(chunkRequest);
+        if (storedChunk) {
+            const blob = await storedChunk.blob();
+            const storedValidator = storedChunk.headers.get(RANGE_VALIDATOR_HEADER);
+            if (blob.size === end - start + 1 && (!validator || storedValidator === validator)) {
+                validator = storedValidator;
+                contentType = contentType || storedChunk.headers.get("Content-Type");
+                chunks.push(blob);
+                countBytes(blob.size);
+                continue;
+            }
+        }
+        const range = await fetchRange(request, start, end, info.size, validator);
+        if (!range) {
+            downloadedBytes -= countedBytes;
+            await deletePartialDownload(hash);
+            return null;
+        }
+        validator = validator || range.response.headers.get("ETag") || range.response.headers.get("Last-Modified");
+        contentType = contentType || range.response.headers.get("Content-Type");
+        const chunkHeaders = {};
+        if (validator) chunkHeaders[RANGE_VALIDATOR_HEADER] = validator;
+        if (contentType) chunkHeaders["Content-Type"] = contentType;
+        await partialCache.put(chunkRequest, new Response(range.blob, { headers: chunkHeaders }));
+        chunks.push(range.blob);
+        countBytes(range.blob.size);
+    }
+    const headers = new Headers();
+    if (contentType) headers.set("Content-Type", contentType);
+    return { body: new Blob(chunks), init: { status: 200, statusText: "OK", headers } };
+}
+
+// Downloads the asset (resuming its interrupted download in ranges if any) and checks its integrity against the hash of
+// the manifest
+async function downloadAsset(path, info) {
+    const hash = PATH_TO_HASH[path];
+    let download = null;
+    if (hash && info.size >= RANGE_DOWNLOAD_MIN_SIZE && await hasPartialDownload(hash)) download = await downloadInRanges(path, hash, info);
+    if (!download) download = await fetchWithProgress(path, info, hash);
+    if (hash && download.init.status === 200) {
+        if (await sha256Hex(await download.body.arrayBuffer()) !== hash) {
+            if (info.size >= RANGE_DOWNLOAD_MIN_SIZE) await deletePartialDownload(hash);
+            throw new Error("Integrity check failed for " + path + " (it doesn't match the hash of the asset manifest)");
+        }
+        if (info.size >= RANGE_DOWNLOAD_MIN_SIZE) await deletePartialDownload(hash);
+    }
+    return download;
+}
+
+// Rebuilds an asset from its base version and a delta patch generated by the pwa goal. Patch format: "WD1" + target
+// length (varint) + operations, each being either 1 + offset + length (varints) to copy a range of the base, or 2 + length
+// (varint) + bytes to add new bytes.
+function applyDeltaPatch(base, patch) {
+    let pos = 3;
+    const readVarint = () => {
+        let value = 0, multiplier = 1, b;
+        do {
+            b = patch[pos++];
+            value += (b & 0x7f) * multiplier;
+            multiplier *= 128;
+        } while (b & 0x80);
+        return value;
+    };
+    if (patch[0] !== 0x57 || patch[1] !== 0x44 || patch[2] !== 0x31) throw new Error("Invalid delta patch");
+    const target = new Uint8Array(readVarint());
+    let t = 0;
+    while (pos < patch.length) {
+        const op = patch[pos++];
+        const a = readVarint();
+        if (op === 1) {
+            const length = readVarint();
+            target.set(base.subarray(a, a + length), t);
+            t += length;
+        } else if (op === 2) {
+            target.set(patch.subarray(pos, pos + a), t);
+            pos += a;
+            t += a;
+        } else throw new Error("Invalid delta patch operation " + op);
+    }
+    if (t !== target.length) throw new Error("Invalid delta patch length");
+    return target;
+}
+
+async function sha256Hex(bytes) {
+    const digest = new Uint8Array(await crypto.subtle.digest("SHA-256", bytes));
+    return Array.from(digest, b => b.toString(16).padStart(2, "0")).join("");
+}
+
+// Tries to build the asset from its cached base version and its delta patch. Returns null if there is no usable base
+// or if the result doesn't match the expected hash (the asset is then fully downloaded).
+async function fetchWithDeltaPatch(cache, hash, info) {
+    if (!info.patch) return null;
+    try {
+        const baseResponse = await cache.match(toHashRequest(info.patch.from));
+        if (!baseResponse) return null;
+        const patchResponse = await fetch(toScopedRequest(info.patch.path));
+        if (!patchResponse.ok) return null;
+        const [base, patch] = await Promise.all([baseResponse.arrayBuffer(), patchResponse.arrayBuffer()]);
+        const target = applyDeltaPatch(new Uint8Array(base), new Uint8Array(patch));
+        if (await sha256Hex(target) !== hash) {
+            console.warn("Delta patch of " + info.path + " doesn't match the expected hash");
+            return null;
+        }
+        const headers = new Headers(baseResponse.headers);
+        headers.delete("Content-Length");
+        return new Response(target, { status: 200, headers });
+    } catch (e) {
+        console.warn("Failed to apply the delta patch of " + info.path, e);
+        return null;
+    }
+}
+
+// Helper to get or fetch (Deduplication) for the precache. The concurrent callers share the same download, which is
+// removed from the in-flight registry as soon as it completes, and each of them gets its own response built on the
+// downloaded body.
+const getOrFetch = async (path, info) => {
+    let download = activeDownloads.get(path);
+    if (!download) {
+        download = downloadAsset(path, info).finally(() => activeDownloads.delete(path));
+        activeDownloads.set(path, download);
+    }
+    const { body, init, uncounted } = await download;
+    if (uncounted) { // Download started by the page, whose bytes were not counted in the progress
+        downloadedBytes += info.assumedSize || 0;
+        reportProgress();
+    }
+    return new Response(body, init);
 };
 
+// Serves an asset of the manifest to the page. If it's already being downloaded, the page gets that download. Otherwise,
+// the network response is streamed to the page, while a tee'd copy is checked against the hash of the manifest and
+// registered as the download of that asset (so the precache can reuse it). Returns the response with that download.
+const streamOrJoinDownload = async (path, hash) => {
+    const activeDownload = activeDownloads.get(path);
+    if (activeDownload) {
+        const { body, init } = await activeDownload;
+        return { response: new Response(body, init), download: activeDownload };
+    }
+    const response = await fetch(toScopedRequest(path), { cache: "no-cache" });
+    if (!response.ok || !response.body) return { response, download: null };
+    const copy = response.clone();
+    const download = (async () => {
+        const bytes = await copy.arrayBuffer();
+        if (await sha256Hex(bytes) !== hash)
+            throw new Error("Integrity check failed for " + path + " (it doesn't match the hash of the asset manifest)");
+        return { body: new Blob([bytes]), init: toDownloadResponseInit(copy), uncounted: true };
+    })().finally(() => activeDownloads.delete(path));
+    download.catch(e => console.warn(e.message));
+    activeDownloads.set(path, download);
+    return { response, download };
+};
+
+// Runtime cache of the assets matching the LAZY, STALE_WHILE_REVALIDATE and NETWORK_FIRST rules, bounded by a byte quota
+// with least recently used eviction. Its index (size and last access of each entry) is kept in memory and saved in the
+// cache itself, so it survives the service worker restarts.
+const RUNTIME_CACHE_NAME = "webfx-pwa-runtime";
+let runtimeCacheIndexPromise = null; // Promise<Map<url, { size, lastAccess }>>
+let runtimeCacheIndexSaveTimer = null;
+
+function getRuntimeCacheIndexRequest() {
+    return toScopedRequest("/__pwa-runtime-cache-index__");
+}
+
+function loadRuntimeCacheIndex() {
+    if (!runtimeCacheIndexPromise) {
+        runtimeCacheIndexPromise = (async () => {
+            const cache = await caches.open(RUNTIME_CACHE_NAME);
+            const indexUrl = getRuntimeCacheIndexRequest().url;
+            const index = new Map();
+            try {
+                const saved = await cache.match(indexUrl);
+                if (saved) Object.entries(await saved.json()).forEach(([url, entry]) => index.set(url, entry));
+            } catch (e) { }
+            // Reconciling the index with the cache content (the last changes may not have been saved before a stop). The
+            // size of the unindexed entries is read from their Content-Length header (set by putInRuntimeCache), and the
+            // entries without it are dropped rather than read in full.
+            const urls = new Set();
+            for (const request of await cache.keys()) {
+                if (request.url === indexUrl || index.has(request.url)) {
+                    urls.add(request.url);
+                    continue;
+                }
+                const response = await cache.match(request);
+                const size = response ? parseInt(response.headers.get("Content-Length"), 10) : NaN;
+                if (size >= 0) {
+                    urls.add(request.url);
+                    index.set(request.url, { size, lastAccess: 0 });
+                } else
+                    await cache.delete(request);
+            }
+            [...index.keys()].filter(url => !urls.has(url)).forEach(url => index.delete(url));
+            return index;
+        })();
+    }
+    return runtimeCacheIndexPromise;
+}
+
+function scheduleRuntimeCacheIndexSave() {
+    if (runtimeCacheIndexSaveTimer) return;
+    runtimeCacheIndexSaveTimer = setTimeout(async () => {
+        runtimeCacheIndexSaveTimer = null;
+        try {
+            const index = await loadRuntimeCacheIndex();
+            const cache = await caches.open(RUNTIME_CACHE_NAME);
+            await cache.put(getRuntimeCacheIndexRequest(), new Response(JSON.stringify(Object.fromEntries(index)), { headers: { "Content-Type": "application/json" } }));
+        } catch (e) {
+            console.warn("Failed to save the runtime cache index", e);
+        }
+    }, 1000);
+}
+
+async function touchRuntimeCacheEntry(url) {
+    const entry = (await loadRuntimeCacheIndex()).get(url);
+    if (entry) {
+        entry.lastAccess = Date.now();
+        scheduleRuntimeCacheIndexSave();
+    }
+}
+
+// Stores that response in the runtime cache, and evicts the least recently used entries beyond the quota. Only the
+// successful responses are cached (the opaque responses are not, as their size is unknown and the browsers count them
+// with a large padding in the storage quota).
+async function putInRuntimeCache(url, response) {
+    try {
+        if (!response || !response.ok) return;
+        const body = await response.blob();
+        if (body.size > RUNTIME_CACHING.maxBytes) return;
+        const cache = await caches.open(RUNTIME_CACHE_NAME);
+        // Recording the size of the stored (decoded) body, so the index can be rebuilt without reading it again
+        const headers = new Headers(response.headers);
+        headers.set("Content-Length", String(body.size));
+        await cache.put(url, new Response(body, { status: response.status, statusText: response.statusText, headers }));
+        const index = await loadRuntimeCacheIndex();
+        index.set(url, { size: body.size, lastAccess: Date.now() });
+        let totalSize = 0;
+        index.forEach(entry => totalSize += entry.size);
+        if (totalSize > RUNTIME_CACHING.maxBytes) {
+            const leastRecentlyUsed = [...index.entries()].filter(([u]) => u !== url).sort(([, a], [, b]) => a.lastAccess - b.lastAccess);
+            for (const [evictedUrl, entry] of leastRecentlyUsed) {
+                if (totalSize <= RUNTIME_CACHING.maxBytes) break;
+                index.delete(evictedUrl);
+                totalSize -= entry.size;
+                await cache.delete(evictedUrl);
+            }
+        }
+        scheduleRuntimeCacheIndexSave();
+    } catch (e) {
+        console.warn("Failed to cache " + url + " at runtime", e);
+    }
+}
+
+// Returns the strategy of the first runtime caching rule matching that request (the rules match the paths of the
+// same-origin requests, and the full URLs of the other ones)
+function getRuntimeStrategy(url, manifestPath, sameOrigin) {
+    const target = sameOrigin ? manifestPath : url.href;
+    const rule = RUNTIME_CACHING.rules.find(r => r.regex.test(target));
+    return rule ? rule.strategy : null;
+}
+
+// The cache key is the hash request for the assets of the manifest (so a new version is never served from an old entry,
+// and these entries don't need to be revalidated), and the request URL otherwise.
+async function handleRuntimeRequest(event, strategy, cacheKey) {
+    const cache = await caches.open(RUNTIME_CACHE_NAME);
+    if (strategy === "NETWORK_FIRST") {
+        try {
+            const response = await fetch(event.request);
+            event.waitUntil(putInRuntimeCache(cacheKey, response.clone()));
+            return response;
+        } catch (e) {
+            const cached = await cache.match(cacheKey);
+            if (!cached) throw e;
+            event.waitUntil(touchRuntimeCacheEntry(cacheKey));
+            return cached;
+        }
+    }
+    const cached = await cache.match(cacheKey);
+    if (cached) {
+        event.waitUntil(touchRuntimeCacheEntry(cacheKey));
+        if (strategy === "STALE_WHILE_REVALIDATE" && cacheKey === event.request.url) {
+            event.waitUntil(fetch(event.request).then(response => putInRuntimeCache(cacheKey, response)).catch(() => { }));
+        }
+        return cached;
+    }
+    const response = await fetch(event.request);
+    event.waitUntil(putInRuntimeCache(cacheKey, response.clone()));
+    return response;
+}
+
 // Install: Fast Install + Background Prefetch
 self.addEventListener("install", event => {
     console.log("PWA install event");
@@ -248,12 +840,14 @@ self.addEventListener("install", event => {
     const installPromise = (async () => {
         const cache = await caches.open(CACHE_NAME);
         await cache.addAll(['index.html', 'pwa-manifest.json']);
+        // The version file is the base of the conditional requests of the version checks
+        await cache.add(VERSION_FILE_PATH.substring(1)).catch(() => { });
 
         // Extract asset manifest from cached index.html
         const cachedIndexHtml = await cache.match('index.html');
         if (cachedIndexHtml) {
             const htmlText = await cachedIndexHtml.text();
-            extractAssetManifest(htmlText);
+            await extractAssetManifest(htmlText);
         } else {
             console.warn("Could not read index.html from cache to extract asset manifest");
         }
@@ -268,7 +862,7 @@ self.addEventListener("install", event => {
         await installPromise; // Wait for fast install to finish
 
         const cache = await caches.open(CACHE_NAME);
-        const assetsToCache = Object.entries(HASH_TO_INFO).filter(([, info]) => info && (info.preCache === true || info.strategy));
+        const assetsToCache = Object.entries(HASH_TO_INFO).filter(([hash, info]) => info && (info.preCache === true || info.strategy) && !LAZY_PERMUTATION_HASHES.has(hash));
 
         // Calculate total bytes (Initial Guess)
         // Default to gzipSize if available (optimistic for production), else size
@@ -281,40 +875,53 @@ self.addEventListener("install", event => {
 
         await reportProgress();
 
-        // Split into Critical and Background
-        const critical = assetsToCache.filter(([, info]) => info.strategy === 'CRITICAL');
-        const background = assetsToCache.filter(([, info]) => info.strategy !== 'CRITICAL');
+        // Split into Critical and Background. The largest critical assets are started first, as all of them are needed
+        // before the application can start (this shortens the total time), while the smallest background assets are
+        // started first, so as many of them as possible are available early.
+        const byAssumedSize = ([, a], [, b]) => (a.assumedSize || 0) - (b.assumedSize || 0);
+        const critical = assetsToCache.filter(([, info]) => info.strategy === 'CRITICAL').sort((a, b) => byAssumedSize(b, a));
+        const background = assetsToCache.filter(([, info]) => info.strategy !== 'CRITICAL').sort(byAssumedSize);
 
-        // Helper to process a list
-        const processList = async (list) => {
-            await Promise.all(list.map(async ([hash, info]) => {
-                const req = toHashRequest(hash);
-                const existing = await cache.match(req);
-                if (!existing) {
-                    try {
-                        const resp = await getOrFetch(info.path, info);
-                        if (resp && resp.ok) await cache.put(req, resp);
-                    } catch (e) {
-                        console.error("Failed to fetch " + info.path, e);
+        // Helper to prefetch an asset
+        const prefetchAsset = async ([hash, info]) => {
+            const req = toHashRequest(hash);
+            const existing = await cache.match(req);
+            if (!existing) {
+                try {
+                    const patched = await fetchWithDeltaPatch(cache, hash, info);
+                    if (patched) {
+                        await cache.put(req, patched);
+                        downloadedBytes += info.assumedSize || 0;
+                        reportProgress();
+                        return;
                     }
-                } else {
-                    // If existing, we count it as downloaded. 
-                    // But wait, we added it to totalBytes. So we must add to downloadedBytes too.
-                    // Use the same assumed size logic to keep progress consistent.
-                    const size = info.assumedSize || 0;
-                    downloadedBytes += size;
-                    reportProgress();
+                    const resp = await getOrFetch(info.path, info);
+                    if (resp && resp.ok) await cache.put(req, resp);
+                } catch (e) {
+                    console.error("Failed to fetch " + info.path, e);
                 }
-            }));
+            } else {
+                // If existing, we count it as downloaded. 
+                // But wait, we added it to totalBytes. So we must add to downloadedBytes too.
+                // Use the same assumed size logic to keep progress consistent.
+                const size = info.assumedSize || 0;
+                downloadedBytes += size;
+                reportProgress();
+            }
         };
 
         // 2a. Download Critical
-        await processList(critical);
+        await runPrefetchQueue(critical, false, prefetchAsset);
         isCriticalDone = true;
         reportProgress(); // Will send criticalCompleted: true
 
-        // 2b. Download Background
-        await processList(background);
+        // 2b. Download Background (unless the user asked to save data)
+        if (isBackgroundPrefetchAllowed()) {
+            await runPrefetchQueue(background, true, prefetchAsset);
+        } else {
+            console.log("Background prefetch skipped (save data)");
+            background.forEach(([, info]) => totalBytes -= info.assumedSize || 0);
+        }
 
         await reportProgress(true);
     })();
@@ -324,9 +931,10 @@ self.addEventListener("install", event => {
 self.addEventListener("activate", event => {
     console.log("PWA activate event");
     event.waitUntil((async () => {
-        // Better to disable navigation preload for now
+        // Navigation preload: the browser starts the navigation requests while the service worker is starting up (the
+        // version check doesn't need to read these responses, so they are just streamed to the page)
         if (self.registration.navigationPreload) {
-            await self.registration.navigationPreload.disable();
+            await self.registration.navigationPreload.enable();
         }
 
         const keys = await caches.keys();
@@ -335,6 +943,8 @@ self.addEventListener("activate", event => {
                 const cache = await caches.open(key);
                 const requests = await cache.keys();
                 const validHashes = new Set(Object.keys(HASH_TO_INFO));
+                // Keeping the bases of the delta patches (they may still be used by the background prefetch)
+                Object.values(HASH_TO_INFO).forEach(info => { if (info && info.patch) validHashes.add(info.patch.from); });
                 await Promise.all(requests.map(req => {
                     const url = new URL(req.url);
                     // Check if it's a hash-based entry (e.g., from toHashRequest)
@@ -347,11 +957,23 @@ self.addEventListener("activate", event => {
                     if (hash && !validHashes.has(hash)) {
                         return cache.delete(req);
                     }
+                    // Delete the previous versions of the externalized asset manifest
+                    if (EXTERNAL_ASSET_MANIFEST_REGEX.test(path) && req.url !== ASSET_MANIFEST_URL) {
+                        return cache.delete(req);
+                    }
                     // Also delete old index.html entries if they are not the current one
                     if ((url.pathname === scopePath + "index.html" || url.pathname === scopePath) && !validHashes.has(PATH_TO_HASH["/index.html"])) {
                         return cache.delete(req);
                     }
                 }));
+            } else if (key === RUNTIME_CACHE_NAME) {
+                // Kept from one version to another (it's bounded by its quota)
+            } else if (key === PARTIAL_CACHE_NAME) {
+                // Keeping the partial downloads of the assets still in the manifest (they are resumed by the prefetch)
+                const cache = await caches.open(key);
+                const requests = await cache.keys();
+                const validHashes = new Set(Object.keys(HASH_TO_INFO));
+                await Promise.all(requests.map(req => validHashes.has(new URL(req.url).pathname.split("/").pop()) ? null : cache.delete(req)));
             } else {
                 await caches.delete(key);
             }
@@ -368,38 +990,18 @@ self.addEventListener("fetch", event => {
     const sameOrigin = url.origin === self.location.origin;
     const manifestPath = toManifestPathFromRequest(event.request);
 
+    // The navigation preload response is settled even when it's not used (ex: served from the cache)
+    if (event.preloadResponse) event.waitUntil(event.preloadResponse.catch(() => { }));
+
     // 1. Index.html & GWT Entry Point (.nocache.js) Update Check (Network First)
     if (sameOrigin && (manifestPath === "/" || manifestPath === "/index.html" || manifestPath.endsWith(".nocache.js"))) {
-        event.respondWith((async () => {
+        const isIndexHtml = manifestPath === "/" || manifestPath === "/index.html";
+        // Detecting version changes with the version file rather than by reading index.html
+        if (isIndexHtml) event.waitUntil(checkForNewVersion());
+        event.respondWith(trackForegroundRequest((async () => {
             try {
-                const networkResponse = await fetch(event.request, { cache: "no-cache" });
+                const networkResponse = (event.preloadResponse && await event.preloadResponse) || await fetch(event.request, { cache: "no-cache" });
                 if (networkResponse && networkResponse.ok) {
-                    // Inspect the fetched index.html to detect version changes via mavenBuildTimestamp meta
-                    if (manifestPath === "/" || manifestPath === "/index.html") {
-                        try {
-                            const clonedForMeta = networkResponse.clone();
-                            const text = await clonedForMeta.text();
-
-                            // Check for version changes
-                            const match = text.match(/<meta\s+name=["']mavenBuildTimestamp["']\s+content=["']([^"']+)["']\s*\/?>(?:\s*<\/meta>)?/i);
-                            if (match && typeof MAVEN_BUILD_TIMESTAMP !== "undefined") {
-                                const fetchedTs = match[1];
-                                if (fetchedTs !== MAVEN_BUILD_TIMESTAMP) {
-                                    console.log("🔆🔆🔆🔆🔆 Detected index.html version change: fetched=" + fetchedTs + ", build=" + MAVEN_BUILD_TIMESTAMP);
-
-                                    // Extract and update asset manifest from index.html
-                                    extractAssetManifest(text);
-
-                                    if (self.registration && self.registration.update) {
-                                        self.registration.update().catch(() => { });
-                                    }
-                                } else {
-                                    console.log("✳️✳️✳️✳️✳️ index.html version still matches " + MAVEN_BUILD_TIMESTAMP);
-                                }
-                            }
-                        } catch (eMeta) { }
-                    }
-
                     // Update cache for offline support
                     try {
                         const cache = await caches.open(CACHE_NAME);
@@ -430,12 +1032,25 @@ self.addEventListener("fetch", event => {
                 return await caches.match(toHashRequest(knownHash));
             }
             return null;
-        })());
+        })()));
         return;
     }
 
-    // 2. General Asset Handling
-    event.respondWith((async () => {
+    // 2. Runtime caching rules (the navigations and the precached assets are handled below)
+    const knownHash = sameOrigin ? PATH_TO_HASH[manifestPath] : null;
+    const knownInfo = knownHash ? HASH_TO_INFO[knownHash] : null;
+    if (event.request.mode !== "navigate" && !(knownInfo && knownInfo.strategy)) {
+        const runtimeStrategy = getRuntimeStrategy(url, manifestPath, sameOrigin);
+        if (runtimeStrategy === "NETWORK_ONLY") return; // Default browser handling
+        if (runtimeStrategy) {
+            const cacheKey = knownHash ? toHashRequest(knownHash).url : event.request.url;
+            event.respondWith(trackForegroundRequest(handleRuntimeRequest(event, runtimeStrategy, cacheKey)));
+            return;
+        }
+    }
+
+    // 3. General Asset Handling
+    event.respondWith(trackForegroundRequest((async () => {
         // A) Try cache first (exact match)
         let cachedResponse = await caches.match(event.request);
         if (cachedResponse) return cachedResponse;
@@ -450,10 +1065,18 @@ self.addEventListener("fetch", event => {
                 // C) Not in cache? Check if we are downloading it (Streaming/Deduplication)
                 const info = HASH_TO_INFO[knownHash];
                 if (info) {
-                    // This taps into the ongoing download or starts a new one with progress
+                    // This taps into the ongoing download or streams a new one
                     try {
-                        const res = await getOrFetch(info.path, info);
-                        if (res) return res;
+                        const { response, download } = await streamOrJoinDownload(info.path, knownHash);
+                        // Caching the GWT permutation selected by the .nocache.js script (as it was not precached), once
+                        // its integrity is checked
+                        if (download && LAZY_PERMUTATION_HASHES.has(knownHash)) {
+                            download.then(async ({ body, init }) => {
+                                const cache = await caches.open(CACHE_NAME);
+                                await cache.put(toHashRequest(knownHash), new Response(body, init));
+                            }).catch(() => { });
+                        }
+                        return response;
                     } catch (e) {
                         // Ignore network errors (e.g. offline) and proceed to fallbacks
                     }
@@ -481,9 +1104,8 @@ self.addEventListener("fetch", event => {
 
         // E) Network Fallback
         try {
-            const networkResponse = await fetchWithRetry(event.request);
-            // Lazy caching logic (if needed for non-essential assets)
-            // ... (omitted for simplicity, focusing on essential assets)
+            const networkResponse = (event.preloadResponse && await event.preloadResponse) || await fetchWithRetry(event.request);
+            // (the assets to cache at runtime are declared with the runtime caching rules, handled above)
             return networkResponse;
         } catch (e) {
             if (isNavLike) {
@@ -492,7 +1114,7 @@ self.addEventListener("fetch", event => {
             }
             throw e;
         }
-    })());
+    })()));
 });
 
 // Helper: fetch with a fallback retry using a reconstructed Request and no-store cache mode